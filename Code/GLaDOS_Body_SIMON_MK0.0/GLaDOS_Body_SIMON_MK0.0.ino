@@ -30,6 +30,11 @@ int positionsCenter[]={-20,2,24,56,68,90,112,134,156,178,200};
 #define OWN_NUMBER 2                                  //device number of the device this code should run on
 #define MINIMUM_SIGNAL_LENGTH 1                       //time in ms that is the minimum signal length of the SIMON protocol
 #define TIMEOUT 200                                   //time in ms that will pass until the method getSignalLength() times out
+#define FRAMED_MODE 128                               //bit of the receiver number that marks a chunk of a large block
+#define CHUNK_HEADER 4                                //bytes in front of the data of a chunk: block id, chunk index, chunk count, chunk length
+#define CHUNK_SIZE 32                                 //maximum number of data bytes of a chunk
+#define MAXIMUM_BLOCK 256                             //maximum size of a block that fits into the memory
+#define KEYFRAME_MODE 5                               //first byte of a block containing a servo keyframe table
 //----------------------------------------Variables for protocol---------------------------
 String readBinaryData="000000100011000100100000001100011000001000000101";
 String receivedBinaryNumber="00000010";
@@ -39,6 +44,11 @@ String command="1 1";
 String receivedChecksums="1000001000000101";
 String ownChecksums="1000001000000101";
 String confirmationString="11111111";
+byte block[MAXIMUM_BLOCK];                            //block that is put together from the received chunks
+int blockLength=0;                                    //number of bytes of the block received so far
+int blockId=-1;                                       //id of the block that is currently received
+byte nextChunk=0;                                     //index of the chunk that is expected next
+bool blockReady=0;                                    //set when all chunks of the block have been received
 //----------------------------------------Variables for protocol---------------------------
 //SIMON functions
 void begin_SIMON(int data_pin, int signal_pin) {      //function to set up the pins for the SIMON protocol
@@ -94,6 +104,22 @@ String intToBinary(int receiver_number) {             //convert integer to binar
   return textToBinary(String((char)receiver_number)); //use function textToBinary to convert the integer into a binary String
 }
 
+int binaryToBytes(String binary, byte bytes[], int maximumLength) {   //convert a String containing binary into bytes, unlike binaryToText zero bytes are kept
+  int length=binary.length()/8;                       //number of complete bytes in the String
+  if(length>maximumLength) {                          //more data than fits into the array
+    return -1;
+  }
+  for(int i=0;i<length;i++) {                         //main loop, going over every byte
+    bytes[i]=0;
+    for(int j=0;j<8;j++) {                            //iterate over all bits of the byte, from msb to lsb
+      if(binary.charAt(i*8+j)=='1') {
+        bitSet(bytes[i],7-j);
+      }
+    }
+  }
+  return length;                                      //return the number of converted bytes
+}
+
 int binaryToInt(String binary) {                      //convert binary to integer
   char s[8];                                          //char array that will be used to convert the binary String to an integer
   binary.toCharArray(s, 9);                           //convert the String into a char array
@@ -156,7 +182,7 @@ byte getSignalLength() {                              //determines the length of
           checkPoint=1;                               //break loop
         }
       }
-      signalLength=(endTime-beginTime)/(1000*MINIMUM_SIGNAL_LENGTH);   //calculate signal length, middle factor based on micros() (1000) or millis() (1)
+      signalLength=(endTime-beginTime+500*MINIMUM_SIGNAL_LENGTH)/(1000*MINIMUM_SIGNAL_LENGTH);   //calculate signal length rounded to the nearest unit, middle factor based on micros() (1000) or millis() (1)
       loopStop=1;                                         //break the main loop
     }
   }
@@ -226,18 +252,50 @@ String readSIMONData(){
     if(receivedChecksums.equals(ownChecksums)&&receivedNumber==OWN_NUMBER){
       sendDataString(confirmationString);
       confirmation=1;
+    }else if(receivedChecksums.equals(ownChecksums)&&receivedNumber==(OWN_NUMBER|FRAMED_MODE)){  //chunk of a large block
+      if(receiveChunk(textData)){
+        sendDataString(confirmationString);
+        command="";                                   //no command, the block is handled once it is complete
+        confirmation=1;
+      }
     }
   }while(!confirmation);
   return command;
 }
 
+bool receiveChunk(String binaryChunk){                 //adds a received chunk to the block, returns if the chunk should be confirmed
+  byte chunk[CHUNK_HEADER+CHUNK_SIZE];                //header and data of the chunk
+  int length=binaryToBytes(binaryChunk,chunk,CHUNK_HEADER+CHUNK_SIZE);
+  if(length<CHUNK_HEADER||chunk[3]!=length-CHUNK_HEADER||chunk[1]>=chunk[2]){  //the length header has to match the received data
+    return 0;
+  }
+  if(chunk[0]==blockId&&chunk[1]<nextChunk){          //chunk was already received, only its confirmation got lost
+    return 1;
+  }
+  if(chunk[1]==0){                                    //first chunk of a new block
+    blockId=chunk[0];
+    nextChunk=0;
+    blockLength=0;
+  }
+  if(chunk[0]!=blockId||chunk[1]!=nextChunk||blockLength+chunk[3]>MAXIMUM_BLOCK){  //chunk does not continue the current block
+    return 0;
+  }
+  memcpy(block+blockLength,chunk+CHUNK_HEADER,chunk[3]);  //append the data to the block
+  blockLength+=chunk[3];
+  nextChunk++;
+  if(nextChunk==chunk[2]){                            //last chunk of the block received
+    blockReady=1;
+  }
+  return 1;
+}
+
 // method for getting the checksums from Fletcher-16 for a given binary data String
 // returns the Checksums in a binary string in the format: "sum1sum2"
 String getFletcher16Checksums(String binaryData) {
   byte sumFletcher1=0;                                //reset sum1
   byte sumFletcher2=0;                                //reset sum2
-  byte length=binaryData.length()/8;                  //calculate number of blocks of 8
-  for(byte i=0;i<length;i++) {                        //loop over data String for each block and calculate the sums
+  int length=binaryData.length()/8;                   //calculate number of blocks of 8
+  for(int i=0;i<length;i++) {                         //loop over data String for each block and calculate the sums
     sumFletcher1=(sumFletcher1+binaryToInt(binaryData.substring(i*8,i*8+8))) % 255; //calculate checksum1
     sumFletcher2=(sumFletcher1+sumFletcher2) % 255;   //calculate checksum2
   }
@@ -349,9 +407,39 @@ void turnServosOffOrOn(bool input) {                               //turns servo
   }
 }
 
-void inputHandler() {                                               //handles different commands sent via SIMON accordingly to their content
+void blockHandler() {                                               //handles a complete block received in framed mode
+  /*a block starts with its mode:
+   * 5. servo keyframe table
+   * -> Format of the block: mode, followed by 4 bytes per keyframe with the positions {0...10} of head, neck, body and center
+   * */
+  if(block[0]==KEYFRAME_MODE) {
+    for(int i=1;i+3<blockLength;i+=4) {                             //move to every keyframe one after another
+      if(block[i]>10||block[i+1]>10||block[i+2]>10||block[i+3]>10) {  //skip keyframes with invalid positions
+        continue;
+      }
+      setServos(positionsHead[block[i]], positionsNeck[block[i+1]], positionsBody[block[i+2]], positionsCenter[block[i+3]]);
+    }
+  }
+}
+
+void inputHandler() {                                               //receives commands sent via SIMON and handles them one after another
   String input = readSIMONData();                                   //get the command via SIMON, blocks until command is received
   Serial.println(input);
+  if(blockReady) {                                                  //the last chunk of a block has been received
+    blockReady=0;
+    blockHandler();
+    return;
+  }
+  for(int i=0;;i++) {                                               //a batch contains several commands separated by ';', in the order they are executed
+    String command=getValue(input,';',i);
+    if(command.length()==0) {                                       //no more commands in the batch
+      break;
+    }
+    commandHandler(command);
+  }
+}
+
+void commandHandler(String input) {                                 //handles different commands sent via SIMON accordingly to their content
   /*input can have different lengths:
    * 1. size=3, for controlling LEDs, eye and on/off servos
    * -> Format of input string: "mode state", where mode={1,2,3} and state={0,1}
@@ -7,6 +7,7 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import model.PlaybackJob;
 import model.Sound;
 
 /**
@@ -16,6 +17,7 @@ import model.Sound;
 public class InputProcessor
 {
     private SIMON simon;
+    private volatile SimonTransmitter transmitter;
     private final Sound sound;
     private final VoiceRecognition voiceRecognition;
     private final Runtime runtime;
@@ -35,6 +37,21 @@ public class InputProcessor
     //Strings for replacing lettuce with GLaDOS
     private final String gladosWrong = "lettuce";
     private final String gladosRight = "GLaDOS";
+
+    //phrases GLaDOS responds with, compiled into word IDs at startup
+    private final String phraseInitiate = "initiate";
+    private final String phraseYes = "yes";
+    private final String phraseOkay = "okay";
+    private final String phraseHello = "hello";
+    private final String phraseLightsOn = "turning the lights on";
+    private final String phraseLightsOff = "turning the lights off";
+    private final String phraseReally = "Really";
+    private final String phraseContinue = "please continue";
+    
+    //command sequence for turning off eye, LEDs and servos of the body, sent in a single SIMON frame
+    private final String[] bodyOff = {"1 0", "2 0", "3 0", "4 5 7 5 5"};
+    //number of SIMON commands that can wait for the transmitter, superseded commands are replaced before they are sent
+    private final int transmitQueueSize = 16;
     /**
      * Constructor
      */
@@ -48,14 +65,18 @@ public class InputProcessor
         this.sleepMode=false;
         this.runtime = Runtime.getRuntime();
         this.sound = new Sound();
+        sound.registerPhrases(phraseInitiate, phraseYes, phraseOkay, phraseHello, phraseLightsOn, phraseLightsOff,
+                phraseReally, phraseContinue);
         if(!sound.isWindows)
         {
             this.simon = new SIMON();
             simon.beginSIMON();
+            this.transmitter = new SimonTransmitter(simon, transmitQueueSize);
         }
         else
         {
             this.simon=null;
+            this.transmitter=null;
         }
         this.voiceRecognition = new VoiceRecognition(sound);
         try
@@ -68,9 +89,23 @@ public class InputProcessor
         }
     }
     
+    /**
+     * Creates the command for moving the servos of the body to random positions
+     * @author Philipp Schulz
+     * @return Command in the format "4 head neck body center"
+     */
+    private String randomServoCommand()
+    {
+        int position1=(int)(Math.random()*10);
+        int position2=(int)(Math.random()*10);
+        int position3=(int)(Math.random()*10);
+        int position4=(int)(Math.random()*10);
+        return "4 "+position1+" "+position2+" "+position3+" "+position4;
+    }
+    
     public void tempRunning()
     {
-        simon.sendSIMONData(2, "2 1");
+        transmitter.send(2, "2 1");
     }
     
     /**
@@ -85,7 +120,7 @@ public class InputProcessor
         Control Servos: "3 0" or "3 1"
         Change Servos:  "4 0 0 0 0" to "4 9 9 9 9"
         */
-        sound.playSound("initiate");
+        sound.playSound(phraseInitiate);
         sound.waitForSoundBeingFinished();
         voiceRecognition.turnOnRecognition();
         //basic functionality is done, only the specific actions for each input are required
@@ -104,13 +139,7 @@ public class InputProcessor
                         {
                             movementTimerStart=Instant.now();
                             System.out.println("movement timer");
-                            simon.sendSIMONData(2, "1 1");
-                            int position1=(int)(Math.random()*10);
-                            int position2=(int)(Math.random()*10);
-                            int position3=(int)(Math.random()*10);
-                            int position4=(int)(Math.random()*10);
-                            simon.sendSIMONData(2, "4 "+position1+" "+position2+" "+position3+" "+position4);
-                            simon.sendSIMONData(2, "1 0");
+                            transmitter.sendBatch(2, "1 1", randomServoCommand(), "1 0");
                         }
                         try
                         {
@@ -150,47 +179,39 @@ public class InputProcessor
                 if(result.equals("hey lettuce")||result.equals("okay lettuce"))
                 {
                     active = true;
-                    sound.playSound("yes");
+                    sound.stopSound();
+                    sound.playSound(phraseYes, PlaybackJob.PRIORITY_CONFIRMATION);
                     runtime.exec("xset -display :0 s reset");
                     if(!isEye)
                     {
-                        simon.sendSIMONData(2, "1 1");
-                        int position1=(int)(Math.random()*10);
-                        int position2=(int)(Math.random()*10);
-                        int position3=(int)(Math.random()*10);
-                        int position4=(int)(Math.random()*10);
-                        simon.sendSIMONData(2, "4 "+position1+" "+position2+" "+position3+" "+position4);
+                        transmitter.sendBatch(2, "1 1", randomServoCommand());
                     }
                 }
                 else if(result.equals("abort") && active)
                 {
-                    sound.playSound("okay");
+                    sound.playSound(phraseOkay);
                     runtime.exec("xset -display :0 s activate");
                     active = false;
                 }
                 else if(result.equals("hello lettuce")||result.equals("hi lettuce"))
                 {
-                    sound.playSound("hello");
+                    sound.playSound(phraseHello);
                 } 
                 else if(result.equals("turn lights on") && active)
                 {
                     active = false;
-                    sound.playSound("turning the lights on");
-                    sound.waitForSoundBeingFinished();
-                    simon.sendSIMONData(2, "2 1");
+                    sound.playSound(phraseLightsOn).thenRun(() -> transmitter.send(2, "2 1"));
                     runtime.exec("xset -display :0 s activate");
                 } 
                 else if(result.equals("turn lights off") && active)
                 {
                     active = false;
-                    sound.playSound("turning the lights off");
-                    sound.waitForSoundBeingFinished();
-                    simon.sendSIMONData(2, "2 0");
+                    sound.playSound(phraseLightsOff).thenRun(() -> transmitter.send(2, "2 0"));
                     runtime.exec("xset -display :0 s activate");
                 }
                 else if((result.equals("turn off")) && active)
                 {
-                    sound.playSound("Really");
+                    sound.playSound(phraseReally, PlaybackJob.PRIORITY_CONFIRMATION);
                     sound.waitForSoundBeingFinished();
                     String nextResult = voiceRecognition.recognize();
                     if(nextResult.equals("yes"))
@@ -198,18 +219,15 @@ public class InputProcessor
                         threadRun=false;
                         threadSleep=true;
                         running = false;
-                        sound.playSound("okay");
-                        simon.sendSIMONData(2, "1 0");
-                        simon.sendSIMONData(2, "2 0");
-                        simon.sendSIMONData(2, "3 0");
-                        simon.sendSIMONData(2, "4 5 7 5 5");
+                        sound.playSound(phraseOkay);
+                        transmitter.sendBatch(2, bodyOff).join();                  //wait until the body is off before the program ends
                     }
                     active = false;
                     runtime.exec("xset -display :0 s activate");
                 }
                 else if(result.equals("shutdown") && active)
                 {
-                    sound.playSound("Really");
+                    sound.playSound(phraseReally, PlaybackJob.PRIORITY_CONFIRMATION);
                     sound.waitForSoundBeingFinished();
                     String nextResult = voiceRecognition.recognize();
                     if(nextResult.equals("yes"))
@@ -217,11 +235,8 @@ public class InputProcessor
                         threadRun=false;
                         threadSleep=true;
                         running = false;
-                        sound.playSound("okay");
-                        simon.sendSIMONData(2, "1 0");
-                        simon.sendSIMONData(2, "2 0");
-                        simon.sendSIMONData(2, "3 0");
-                        simon.sendSIMONData(2, "4 5 7 5 5");
+                        sound.playSound(phraseOkay);
+                        transmitter.sendBatch(2, bodyOff).join();                  //wait until the body is off before the program ends
                         runtime.exec("xset -display :0 s activate");
                         if(sound.isWindows)
                         {
@@ -237,7 +252,7 @@ public class InputProcessor
                 } 
                 else if(result.equals("reboot") && active)
                 {
-                    sound.playSound("Really");
+                    sound.playSound(phraseReally, PlaybackJob.PRIORITY_CONFIRMATION);
                     sound.waitForSoundBeingFinished();
                     String nextResult = voiceRecognition.recognize();
                     if(nextResult.equals("yes"))
@@ -245,11 +260,8 @@ public class InputProcessor
                         threadRun=false;
                         threadSleep=true;
                         running = false;
-                        sound.playSound("okay");
-                        simon.sendSIMONData(2, "1 0");
-                        simon.sendSIMONData(2, "2 0");
-                        simon.sendSIMONData(2, "3 0");
-                        simon.sendSIMONData(2, "4 5 7 5 5");
+                        sound.playSound(phraseOkay);
+                        transmitter.sendBatch(2, bodyOff).join();                  //wait until the body is off before the program ends
                         runtime.exec("xset -display :0 s activate");
                         if(sound.isWindows)
                         {
@@ -266,20 +278,20 @@ public class InputProcessor
                 else if(result.equals("turn eye on") && active)
                 {
                     active = false;
-                    sound.playSound("okay");
-                    simon.sendSIMONData(2, "1 1");
+                    sound.playSound(phraseOkay);
+                    transmitter.send(2, "1 1");
                     runtime.exec("xset -display :0 s activate");
                 } 
                 else if(result.equals("turn eye off") && active)
                 {
                     active = false;
-                    sound.playSound("okay");
-                    simon.sendSIMONData(2, "1 0");
+                    sound.playSound(phraseOkay);
+                    transmitter.send(2, "1 0");
                     runtime.exec("xset -display :0 s activate");
                 } 
                 else if(result.equals("enable sleep mode") && active)
                 {
-                    sound.playSound("Really");
+                    sound.playSound(phraseReally, PlaybackJob.PRIORITY_CONFIRMATION);
                     String nextResult = voiceRecognition.recognize();
                     if(nextResult.equals("yes"))
                     {
@@ -287,24 +299,21 @@ public class InputProcessor
                         sleepMode=true;
                         now = LocalDateTime.now();  
                         dayOfYear=now.getDayOfYear();
-                        sound.playSound("okay");
-                        simon.sendSIMONData(2, "1 0");
-                        simon.sendSIMONData(2, "2 0");
-                        simon.sendSIMONData(2, "3 0");
-                        simon.sendSIMONData(2, "4 5 7 5 5");
+                        sound.playSound(phraseOkay);
+                        transmitter.sendBatch(2, bodyOff);
                         voiceRecognition.turnOffRecognition();
                     }
                     active = false;
                 }
                 else if(result.equals("pause recognition")||result.equals("shut up"))
                 {
-                    sound.playSound("Really");
+                    sound.playSound(phraseReally, PlaybackJob.PRIORITY_CONFIRMATION);
                     sound.waitForSoundBeingFinished();
                     String nextResult = voiceRecognition.recognize();
                     if(nextResult.equals("yes"))
                     {
                         isPaused = true;
-                        sound.playSound("okay");
+                        sound.playSound(phraseOkay);
                         pausedTimestamp = new Timestamp(System.currentTimeMillis()).getTime();
                         voiceRecognition.turnOffRecognition();
                     }
@@ -313,10 +322,10 @@ public class InputProcessor
                 }
                 else if(result.equals("reset communication"))
                 {
-                    sound.playSound("okay");
-                    simon.resetSIMON();
+                    sound.playSound(phraseOkay);
+                    transmitter.reset();                                        //queued, the voice loop never waits for the data line
                     sound.waitForSoundBeingFinished();
-                    sound.playSound("please continue");
+                    sound.playSound(phraseContinue);
                     active = false;
                     runtime.exec("xset -display :0 s activate");
                 }
@@ -328,11 +337,11 @@ public class InputProcessor
                 currentTimestamp = new Timestamp(System.currentTimeMillis()).getTime();
                 if(isPaused && currentTimestamp>=pausedTimestamp+3600000)
                 {
-                    simon.resetSIMON();
+                    transmitter.reset();
                     System.out.println("end of paused loop reached");
                     isPaused = false;
                     sleepMode = false;
-                    sound.playSound("please continue");
+                    sound.playSound(phraseContinue);
                     sound.waitForSoundBeingFinished();
                     voiceRecognition.turnOnRecognition();
                 }
@@ -350,18 +359,14 @@ public class InputProcessor
                 now = LocalDateTime.now();
                 if(dayOfYear<now.getDayOfYear() && now.getHour()==9)
                 {
+                    transmitter.close();
                     simon = new SIMON();
                     simon.beginSIMON();
+                    transmitter = new SimonTransmitter(simon, transmitQueueSize);
                     runtime.exec("xset -display :0 s activate");
                     threadSleep=false;
                     sleepMode=false;
-                    simon.sendSIMONData(2, "1 1");
-                    int position1=(int)(Math.random()*10);
-                    int position2=(int)(Math.random()*10);
-                    int position3=(int)(Math.random()*10);
-                    int position4=(int)(Math.random()*10);
-                    simon.sendSIMONData(2, "4 "+position1+" "+position2+" "+position3+" "+position4);
-                    simon.sendSIMONData(2, "1 0");
+                    transmitter.sendBatch(2, "1 1", randomServoCommand(), "1 0");
                     voiceRecognition.turnOnRecognition();
                 }
                 try
@@ -0,0 +1,130 @@
+package control;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioFactory;
+import com.pi4j.io.gpio.GpioPinDigitalMultipurpose;
+import com.pi4j.io.gpio.PinMode;
+import com.pi4j.io.gpio.PinPullResistance;
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.RaspiPin;
+import com.pi4j.io.gpio.event.PinDigitalStateChangeEvent;
+import com.pi4j.io.gpio.event.PinListener;
+
+/**
+ * SIMON data line on GPIO 0 of the Raspberry Pi, accessed with the Pi4J library
+ * Edges are taken from the GPIO provider on the interrupt thread of Pi4J, in the order they happened. The listeners of a GPIO pin
+ * would run on a thread pool instead, so their time stamps would be late by a thread handoff and could arrive out of order.
+ * @author Philipp Schulz
+ */
+public class Pi4jSimonBus implements SimonBus
+{
+    //Stuff from the Pi4J library that is used to access the GPIO pins
+    private final GpioController gpio;
+    private volatile GpioPinDigitalMultipurpose dataPin;                        //Data line for the SIMON protocol
+    private SimonEdgeCapture capture;                                           //receives the edges of the data line, null if polled
+    private final PinListener edgeListener;                                     //writes the edges of the data line into the capture
+    
+    /**
+     * Constructor of the Pi4J bus, instantiates the gpio factory
+     * @author Philipp Schulz
+     */
+    public Pi4jSimonBus()
+    {
+        gpio = GpioFactory.getInstance();
+        edgeListener = event ->
+        {
+            if(event instanceof PinDigitalStateChangeEvent)
+            {
+                capture.edge(((PinDigitalStateChangeEvent) event).getState().isHigh(), System.nanoTime());
+            }
+        };
+    }
+    
+    @Override
+    public void open()
+    {
+        //initialize dataPin as input with pullup resistor
+        dataPin = gpio.provisionDigitalMultipurposePin(RaspiPin.GPIO_00, PinMode.DIGITAL_INPUT, PinPullResistance.PULL_UP);
+        dataPin.setShutdownOptions(true, PinState.LOW, PinPullResistance.OFF);
+        if(capture != null)
+        {
+            addEdgeListener();
+        }
+    }
+    
+    @Override
+    public boolean captureEdges(SimonEdgeCapture edgeCapture)
+    {
+        capture = edgeCapture;
+        if(dataPin != null)
+        {
+            addEdgeListener();
+        }
+        return true;
+    }
+    
+    /**
+     * Adds the edge listener to the provider of the data pin, it is called on the interrupt thread as soon as the edge is detected
+     * @author Philipp Schulz
+     */
+    private void addEdgeListener()
+    {
+        dataPin.getProvider().addListener(dataPin.getPin(), edgeListener);
+    }
+    
+    /**
+     * Releases the data pin, the GPIO controller keeps running
+     * Shutting the controller down would also shut down the event threads of Pi4J for good, as GpioFactory hands out the same
+     * controller again, so no edge would be reported after the first reset
+     * @author Philipp Schulz
+     */
+    @Override
+    public void reset()
+    {
+        if(dataPin == null)
+        {
+            return;
+        }
+        dataPin.getProvider().removeListener(dataPin.getPin(), edgeListener);
+        dataPin.unexport();
+        gpio.unprovisionPin(dataPin);
+        dataPin = null;
+    }
+    
+    @Override
+    public void setOutput()
+    {
+        dataPin.setMode(PinMode.DIGITAL_OUTPUT);
+    }
+    
+    @Override
+    public void setInput()
+    {
+        dataPin.setMode(PinMode.DIGITAL_INPUT);
+        dataPin.setPullResistance(PinPullResistance.PULL_UP);
+    }
+    
+    @Override
+    public void high()
+    {
+        dataPin.high();
+    }
+    
+    @Override
+    public void low()
+    {
+        dataPin.low();
+    }
+    
+    @Override
+    public boolean isHigh()
+    {
+        return dataPin.isHigh();
+    }
+    
+    @Override
+    public boolean isLow()
+    {
+        return dataPin.isLow();
+    }
+}
@@ -1,56 +1,106 @@
 package control;
 
-import com.pi4j.io.gpio.GpioController;
-import com.pi4j.io.gpio.GpioFactory;
-import com.pi4j.io.gpio.GpioPinDigitalMultipurpose;
-import com.pi4j.io.gpio.PinMode;
-import com.pi4j.io.gpio.PinPullResistance;
-import com.pi4j.io.gpio.PinState;
-import com.pi4j.io.gpio.RaspiPin;
-import java.math.BigInteger;
-import java.time.Duration;
-import java.time.Instant;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import model.LatencyHistogram;
 /**
  * Class for the SIMON protocol. Enables program to send data to local microcontroller connected via SIMON
  * @author Philipp Schulz
  */
 public class SIMON
 {
-    //Stuff from the Pi4J library that is used to access the GPIO pins
-    private GpioController gpio;
-    
     //constants and defines for SIMON protocol
-    private volatile GpioPinDigitalMultipurpose dataPin;//Data line for the SIMON protocol
+    private final SimonBus dataPin;                     //Data line for the SIMON protocol, the GPIO pin or a simulated bus
     //private final Pin signalPin;                      //Signal line for the SIMON protocol
     //-> not needed as in this case the signalPin is already connected to system wide ground
     private final int ownNumber;                        //device number of the device this code should run on
     private final int minimumSignalLength;              //time in ms that is the minimum signal length of the SIMON protocol
     private final int timeout;                          //time in ms that will pass until the method getSignalLength() times out
+    private long sentFrames;                            //number of frames sent including retries
+    private long retries;                               //number of frames that were not confirmed
+    private long resets;                                //number of protocol resets
+    private final SimonFrame transmitFrame;             //reused buffer for the frames that are sent
+    private final SimonFrame receiveFrame;              //reused buffer for the frames that are received
+    private int blockId;                                //id of the last block sent in framed mode
+    private final SimonTimer timer;                     //timing engine for the pulses and waits
+    private final LatencyHistogram cpuTime;             //CPU time used per transaction
+    private final ThreadMXBean threads;                 //source of the CPU time of the sending thread
+    private final SimonEdgeCapture capture;             //edges of the data line captured by the bus, null if the line is polled
+    private final SimonPulseClassifier classifier;      //turns the measured signal widths into signal lengths
+    private final StringBuilder batch;                  //reused buffer for the commands of a batch
+    private final List<String> frameCommands;           //commands of the batch frame that is sent, applied to the shadow once confirmed
+    private final Map<Integer, SimonDeviceState> devices; //shadow of the state of every receiver, null if no command is skipped
+    private final SimonDeviceState plannedState;        //state of a receiver after the commands of a batch that are sent
+    private long skippedCommands;                       //number of commands not sent because they would not change the state
+    
+    private final long NANOS_PER_MILLI = 1_000_000L;
+    private final String POLLING_PROPERTY = "glados.simon.polling";
+    private final String BLOCK_OUTPUT = "SIMON: sending block of %d bytes to device %d...%n";
+    private final String TIMER_PROPERTY = "glados.simon.timer";
+    private final String TIMER_SPIN = "spin";
+    private final String TIMER_HYBRID = "hybrid";
+    private final String BATCH_OUTPUT = "SIMON: sending batch to device %d...%n";
+    private final String BATCH_DONE_OUTPUT = "SIMON: %d of %d commands of the batch sent%n";
+    private final String ERROR_BATCH = "SIMON: command \"%s\" of a batch must not contain ';'";
+    private final char BATCH_SEPARATOR = ';';
+    private final String ERROR_BLOCK = "SIMON: block of %d bytes, it has to contain 1 to %d bytes";
+    private final String SHADOW_PROPERTY = "glados.simon.shadow";
+    private final String SKIP_OUTPUT = "SIMON: skipping \"%s\" for device %d, its state would not change%n";
     
     /**
-     * Constructor of SIMON class
+     * Constructor of SIMON class, uses GPIO 0 of the Raspberry Pi
      */
     public SIMON()
     {
-        //instantiate gpio factory
-        gpio = GpioFactory.getInstance();
+        this(new Pi4jSimonBus());
+    }
+    
+    /**
+     * Constructor of SIMON class for a given data line, e.g. a simulated bus
+     * @author Philipp Schulz
+     * @param bus Data line for the SIMON protocol
+     */
+    public SIMON(SimonBus bus)
+    {
+        this.dataPin = bus;
         //constants for SIMON protocol
         this.ownNumber = 1;
         this.minimumSignalLength = 1;
         this.timeout = 200;
+        this.transmitFrame = new SimonFrame();
+        this.receiveFrame = new SimonFrame();
+        this.timer = new SimonTimer(!TIMER_SPIN.equals(System.getProperty(TIMER_PROPERTY, TIMER_HYBRID)));
+        this.cpuTime = new LatencyHistogram("SIMON: CPU time per transaction");
+        this.threads = ManagementFactory.getThreadMXBean();
+        SimonEdgeCapture edgeCapture = new SimonEdgeCapture();
+        this.capture = !Boolean.getBoolean(POLLING_PROPERTY) && bus.captureEdges(edgeCapture) ? edgeCapture : null;
+        this.classifier = new SimonPulseClassifier(minimumSignalLength*NANOS_PER_MILLI);
+        this.batch = new StringBuilder(SimonFrame.PAYLOAD_CAPACITY);
+        this.frameCommands = new ArrayList<>();
+        this.devices = Boolean.parseBoolean(System.getProperty(SHADOW_PROPERTY, "true")) ? new HashMap<>() : null;
+        this.plannedState = new SimonDeviceState();
     }
     
     /**
      * Reset the SIMON protocol in case if the transmissions are failing
      * @author Philipp Schulz
      */
-    public void resetSIMON()
+    public synchronized void resetSIMON()
     {
         System.out.println("SIMON: resetting protocol...");
-        dataPin.unexport();
-        gpio.shutdown();
-        gpio = null;
-        gpio = GpioFactory.getInstance();
+        resets++;
+        if(devices != null)
+        {
+            for(SimonDeviceState device : devices.values())                     //transmissions failed, the bodies may be in any state
+            {
+                device.invalidate();
+            }
+        }
+        dataPin.reset();
         beginSIMON();
     }
     
@@ -63,216 +113,178 @@ public class SIMON
         try
         {
             //initialize dataPin as input with pullup resistor
-            dataPin = gpio.provisionDigitalMultipurposePin(RaspiPin.GPIO_00, PinMode.DIGITAL_INPUT, PinPullResistance.PULL_UP);
-            dataPin.setShutdownOptions(true, PinState.LOW, PinPullResistance.OFF);
+            dataPin.open();
         }
         catch(Exception e)
         {
-            dataPin.setMode(PinMode.DIGITAL_OUTPUT);                            //set the dataPin as an output
+            dataPin.setOutput();                                                    //set the dataPin as an output
             dataPin.low();                                                      //configure dataPin as low
-            busyWaitMillis((int)timeout/4);                                     //wait for [timeout/4] ms
+            waitMillis((int)timeout/4);                                     //wait for [timeout/4] ms
             dataPin.high();                                                     //configure dataPin as high
-            busyWaitMillis((int)timeout/4);                                     //wait for [timeout/4] ms
-            dataPin.setMode(PinMode.DIGITAL_INPUT);
-            dataPin.setPullResistance(PinPullResistance.PULL_UP);               //configure data line as an input to enable communication
-            dataPin.setShutdownOptions(true, PinState.LOW, PinPullResistance.OFF);
+            waitMillis((int)timeout/4);                                     //wait for [timeout/4] ms
+            dataPin.setInput();                                                 //configure data line as an input to enable communication
         }
-        busyWaitMillis(timeout);                                                //wait for [timeout] ms
+        waitMillis(timeout);                                                //wait for [timeout] ms
     }
     
     /**
-     * Method for waiting a given time in milliseconds
-     * original from: http://www.rationaljava.com/2015/10/measuring-microsecond-in-java.html
+     * Method for waiting a given time in milliseconds, parks the thread for the bulk of the time unless configured to spin
      * @author Philipp Schulz
      * @param millis Time in milliseconds that should be waited for
      */
-    private static void busyWaitMillis(long millis){ //seems to be somewhat accurate for us, better use in ranges of 100us for better results
-        long micros = millis*1000;                                              //convert ms into us
-        long waitUntil = System.nanoTime() + (micros * 1_000);                  //calculate timestamp to stop at
-        while(waitUntil > System.nanoTime())                                    //wait until calculated timestamp has been reached
-        {
-            
-        }
-    }
-    
-    /**
-     * Method for converting a String containing an ASCII text into a binary String
-     * @author Philipp Schulz
-     * @param text String that contains the ASCII text to convert
-     * @return Binary String of the given String
-     */
-    private String textToBinary(String text)
+    private void waitMillis(long millis)
     {
-        String binary="";                                                       //String that wil contain the binary representation of the text
-        for(int i=1;i<=text.length();i++)                                       //get and convert each character of the String
-        {
-            String character = text.substring(i-1,i);                           //get current character
-            String binaryCharacter = new BigInteger(character.getBytes()).toString(2);    //converts the given String into binary
-            for(int j = binaryCharacter.length(); j < 8;j++)                    //binary String has to be filled with '0' until length of 8 bits
-            {
-                binaryCharacter = "0"+binaryCharacter;                          //add '0' in front of binary String
-            }
-            binary+=binaryCharacter;                                            //add converted character to result String
-        }
-        return binary;                                                          //return binary representation of text as a String
+        timer.waitMillis(millis);
     }
     
     /**
-     * Method for converting a binary String to an ASCII text
+     * Sends the bits of a frame including begin and end signal
      * @author Philipp Schulz
-     * @param binary String that contains the binary text to convert
-     * @return ASCII String of the given binary text
+     * @param frame Frame which content should be sent
      */
-    private String binaryToText(String binary)
+    private void sendFrame(SimonFrame frame) 
     {
-        try
-        {
-            return new String(new BigInteger(binary, 2).toByteArray());             //convert and return binary String into ASCII String
-        }
-        catch(Exception e)
-        {
-            return "";
-        }
-    }
-    
-    /**
-     * Method for converting an Integer into a binary String
-     * @author Philipp Schulz
-     * @param receiver_number Integer that should be converted into a binary String
-     * @return Binary String of the given Integer
-     */
-    private String intToBinary(int integer)
-    {
-        String binary=Integer.toString(integer,2);                              //convert Integer to binary String
-        for(int i = binary.length();i<8;i++)                                     //fill the missing leading 0s
-        {
-            binary = "0" + binary;                                              //add missing leading 0
-        }
-        return binary;                                                          //return binary String of the given Integer
-    }
-    
-    /**
-     * Method for converting a binary String into an integer
-     * @author Philipp Schulz
-     * @param binary Binary String that should be converted into a binary String
-     * @return Integer resulting by the given binary String
-     */
-    private int binaryToInt(String binary)
-    {
-        return Integer.parseInt(binary, 2);                                     //convert and return binary String into Integer
-    }
-    
-    /**
-     * Sends the content of the binaryString including begin and end signal
-     * @author Philipp Schulz
-     * @param binaryString Binary String which content should be sent
-     */
-    private void sendDataString(String binaryString) 
-    {
-        dataPin.setMode(PinMode.DIGITAL_OUTPUT);                                //set the dataPin as an output
+        dataPin.setOutput();                                                    //set the dataPin as an output
         dataPin.high();                                                         //configure dataPin as high
-        busyWaitMillis(2*minimumSignalLength);
+        waitMillis(2*minimumSignalLength);
         for(int i=0;i<8;i++)                                                    //instead of waiting for 16*minimumSignalLength, toggle DATA line
         {
             dataPin.low();                                                      //change DATA pin to LOW
-            busyWaitMillis(minimumSignalLength);                                //delay for minimumSignalLength
+            waitMillis(minimumSignalLength);                                //delay for minimumSignalLength
             dataPin.high();                                                     //change DATA pin to HIGH
-            busyWaitMillis(minimumSignalLength);                                //delay for minimumSignalLength
+            waitMillis(minimumSignalLength);                                //delay for minimumSignalLength
         }
-        busyWaitMillis(5*minimumSignalLength);
+        waitMillis(5*minimumSignalLength);
         dataPin.low();                                                          //begin enable signal
-        busyWaitMillis(3*minimumSignalLength);                                  //wait for 3*minimumSignalLength
+        waitMillis(3*minimumSignalLength);                                  //wait for 3*minimumSignalLength
         dataPin.high();                                                         //end enable signal
-        busyWaitMillis(minimumSignalLength);                                    //wait for minimumSignalLength
-        for(int i=0;i<binaryString.length();i++)                                //loop over binary String
+        waitMillis(minimumSignalLength);                                    //wait for minimumSignalLength
+        int bitCount=frame.getBitCount();
+        for(int i=0;i<bitCount;i++)                                             //loop over the bits of the frame
         {
-            char current=binaryString.charAt(i);                                //get current char from binary String
-            dataPin.low();                                                      //begin signal binary String digit
-            if(current=='0')                                                    //find out if current char is 0 or 1
+            dataPin.low();                                                      //begin signal of the bit
+            if(!frame.getBit(i))                                                //find out if current bit is 0 or 1
             {
-                busyWaitMillis(minimumSignalLength);                            //if 0, wait for minimumSignalLength
+                waitMillis(minimumSignalLength);                            //if 0, wait for minimumSignalLength
             }
             else
             {
-                busyWaitMillis(2*minimumSignalLength);                          //if 1, wait for 2*minimumSignalLength
+                waitMillis(2*minimumSignalLength);                          //if 1, wait for 2*minimumSignalLength
             }
-            dataPin.high();                                                     //end of signal binary String digit
-            busyWaitMillis(minimumSignalLength);                                //wait for minimumSignalLength
+            dataPin.high();                                                     //end of signal of the bit
+            waitMillis(minimumSignalLength);                                //wait for minimumSignalLength
         }
         dataPin.low();                                                          //begin disable signal
-        busyWaitMillis(4*minimumSignalLength);                                  //wait for 4*minimumSignalLength
+        waitMillis(4*minimumSignalLength);                                  //wait for 4*minimumSignalLength
         dataPin.high();                                                         //end disable signal
-        busyWaitMillis(2);                                                      //wait until receiver device notices last digital level
+        waitMillis(2);                                                      //wait until receiver device notices last digital level
     }
     
     /**
      * Determines the length of the current signal on the signal line, function blocks when called
+     * The width of the signal is classified as the nearest multiple of the signal unit learned from the preamble
      * @author Philipp Schulz
-     * @return Signal length in milliseconds
+     * @param preamble True while waiting for the enable signal, pulses of one unit are used to learn the signal unit
+     * @return Signal length in multiples of minimumSignalLength, timeout if no complete signal arrived in time
      */
-    private int getSignalLength() 
+    private int getSignalLength(boolean preamble) 
     {
-        boolean loopStop=false;                                                 //required boolean value for main loop
-        int signalLength=0;                                                     //declare value to return, used in later calculation
-        boolean timeoutState=false;                                             //required boolean value for determining if signal was found
-        Instant beginTime = Instant.now();                                      //save current timestamp
-        while(!loopStop)                                                        //main loop, determines signal length
+        long width = capture!=null ? measureCapturedSignal() : measurePolledSignal();    //edges captured by the bus do not need polling
+        if(width<0)
+        {
+            return timeout;                                                     //returns timeout as signal length
+        }
+        int signalLength=classifier.classify(width);                            //nearest multiple of the signal unit
+        if(preamble&&signalLength==1)
+        {
+            classifier.learn(width);                                            //preamble pulses are exactly one unit long
+        }
+        return signalLength;
+    }
+    
+    /**
+     * Measures the width of the next low signal by polling the data line
+     * @author Philipp Schulz
+     * @return Width of the signal in ns, -1 if no complete signal arrived in time
+     */
+    private long measurePolledSignal()
+    {
+        long timeoutNanos=timeout*minimumSignalLength*NANOS_PER_MILLI;          //time until the signal times out
+        long beginTime = System.nanoTime();                                     //save current timestamp
+        while(true)                                                             //main loop, determines signal length
         {
             if(dataPin.isLow())                                                 //if signal is LOW
             {
-                beginTime = Instant.now();                                      //save current timestamp
-                Instant endTime = beginTime;                                    //save current timestamp
-                boolean checkPoint=false;                                       //variable to end while loop
-                while(!checkPoint)                                              //when signal is still LOW
+                beginTime = System.nanoTime();                                  //save current timestamp
+                while(true)                                                     //when signal is still LOW
                 {
                     if(dataPin.isHigh())                                        //if signal ends (e.g. goes from low to high)
                     {
-                        checkPoint=true;                                        //break main loop
-                        endTime= Instant.now();                                 //save current time to deterime signal length
+                        return System.nanoTime()-beginTime;                     //width of the signal
                     }
-                    if((Duration.between(beginTime, Instant.now()).toMillis()/minimumSignalLength)>=timeout)    //timeout for when the signal is not continued
+                    if(System.nanoTime()-beginTime>=timeoutNanos)               //timeout for when the signal is not continued
                     {
-                        timeoutState=true;                                      //used for returning timeout
-                        checkPoint=true;                                        //break loop
+                        return -1;
                     }
                 }
-                signalLength=(int)(Duration.between(beginTime, endTime).toMillis()/minimumSignalLength);    //calculate signal length
-                loopStop=true;                                                  //break the main loop
             }
-            else
+            else if(System.nanoTime()-beginTime>=timeoutNanos)                  //timeout for when the signal is not continued
             {
-                if((Duration.between(beginTime, Instant.now()).toMillis()/minimumSignalLength)>=timeout)    //timeout for when the signal is not continued
-                {
-                    timeoutState=true;                                          //used for returning timeout
-                    loopStop=true;                                              //break loop
-                }
+                return -1;
             }
         }
-        if(!timeoutState)
+    }
+    
+    /**
+     * Measures the width of the next low signal from the captured edges, the thread is parked while it waits for them
+     * The width is measured between the time stamps of the edges, so it does not depend on how fast the thread reacts
+     * @author Philipp Schulz
+     * @return Width of the signal in ns, -1 if no complete signal arrived in time
+     */
+    private long measureCapturedSignal()
+    {
+        long timeoutNanos=timeout*minimumSignalLength*NANOS_PER_MILLI;          //time until the signal times out
+        if(capture.isHigh())                                                    //wait for the begin of the signal
         {
-            return signalLength;                                                //return signal length, has to be between 1 and 4
+            long deadline=System.nanoTime()+timeoutNanos;
+            do
+            {
+                if(!capture.next(deadline))
+                {
+                    return -1;
+                }
+            }while(capture.isHigh());
         }
-        else
+        long beginTime=capture.getTime();                                       //time stamp of the falling edge
+        do                                                                      //wait for the end of the signal
         {
-            return timeout;                                                     //returns timeout as signal length
-        }
+            if(!capture.next(beginTime+timeoutNanos))
+            {
+                return -1;
+            }
+        }while(capture.isLow());
+        return capture.getTime()-beginTime;                                     //width between the time stamps of both edges
     }
     
     /**
-     * Method to read incoming data from the SIMON data line as a binary String
+     * Method to read incoming data from the SIMON data line into a frame
      * @author Philipp Schulz
-     * @return binary String read from the SIMON data line
+     * @param frame Frame the received bits are written to
      */
-    private String readData()
+    private void readData(SimonFrame frame)
     {
-        dataPin.setMode(PinMode.DIGITAL_INPUT);
-        dataPin.setPullResistance(PinPullResistance.PULL_UP);                   //configure data line as an input to enable communication
-        busyWaitMillis(1);
-        String readData = "";                                                   //temporary set the received data
+        dataPin.setInput();                                                     //configure data line as an input to enable communication
+        if(capture!=null)
+        {
+            capture.skip();                                                     //edges sent by this side are not part of the answer
+        }
+        waitMillis(1);
+        frame.clear();                                                          //remove the previously received data
+        classifier.beginFrame();                                                //learn the signal unit from the preamble of this frame
         boolean waitLoop = false;                                               //required boolean value to determine end of sent data
         while(!waitLoop)                                                        //loop for waiting for the enable signal
         {               
-            int currentSignalLength = getSignalLength();                        //get the current signal length
+            int currentSignalLength = getSignalLength(true);                    //get the current signal length
             if(currentSignalLength == 3)                                        //if current signal length is enable signal length
             {
                 waitLoop = true;                                                //break waiting loop
@@ -285,48 +297,219 @@ public class SIMON
         boolean mainLoop = false;                                               //required boolean value to gather data from line and end the transmission
         while(!mainLoop)                                                        //main loop, get every data signal from data line
         {                                  
-            int signalLength = getSignalLength();                               //gets the signal length of the current signal sent over DATA line
+            int signalLength = getSignalLength(false);                          //gets the signal length of the current signal sent over DATA line
             if(signalLength == 1)
             {                                                                   //if the read signal length is 1
-                readData += "0";                                                //add a 0 to the received data
+                frame.appendBit(false);                                         //add a 0 to the received data
             }
             else if(signalLength == 2)
             {                                                                   //if the read signal length is 2
-                readData += "1";                                                //add a 1 to the received data
+                frame.appendBit(true);                                          //add a 1 to the received data
             }
             else if((signalLength == 4) || (signalLength == timeout))           //if the read signal length is 4
             {
                 mainLoop=true;                                                  //exit the main loop, indicating the end of the transmission
             }
         }
-        return readData;                                                        //return the binary String containing the read signals of the DATA line
     }
     
     
     /**
      * Method for sending data over the SIMON protocol
+     * A command that would not change the state of the receiver is skipped, -Dglados.simon.shadow=false sends every command
      * @author Philipp Schulz
      * @param receiver_number the device number of the receiving device in the SIMON protocol
      * @param command the String containing the information that should be send to the receiver 
      */
     public synchronized void sendSIMONData(int receiver_number,String command)
     {
+        SimonDeviceState device = getDevice(receiver_number);
+        if(device!=null && device.isRedundant(command))                         //the receiver is already in the state the command sets
+        {
+            skippedCommands++;
+            System.out.printf(SKIP_OUTPUT, command, receiver_number);
+            return;
+        }
         System.out.println("sending...");
+        long beginCpuTime = readCpuTime();
+        transmitFrame.encode(receiver_number, command);                         //create complete data package to send
+        sendConfirmed(transmitFrame);                                           //send until the receiver confirmed it
+        if(device!=null)
+        {
+            device.apply(command);
+        }
+        cpuTime.record(readCpuTime() - beginCpuTime);
+        System.out.println("sending done");
+    }
+    
+    /**
+     * Method for sending several commands to one receiver in a single frame that is confirmed once
+     * The commands are separated by ';' and executed by the receiver in the given order, e.g. turning on the eye, moving the servos
+     * and turning off the eye again. A frame holds up to SimonFrame.PAYLOAD_CAPACITY characters, further commands are sent in
+     * further frames and a longer command is sent in a frame of its own. Commands are planned against the shadow of the receiver as
+     * it will be after the earlier frames, nothing is sent if every command is skipped.
+     * @author Philipp Schulz
+     * @param receiver_number the device number of the receiving device in the SIMON protocol
+     * @param commands the commands that should be send to the receiver, none of them may contain ';'
+     * @throws IllegalArgumentException When a command contains ';'
+     */
+    public synchronized void sendSIMONBatch(int receiver_number,String... commands)
+    {
+        for(String command : commands)                                          //check all commands before anything is sent
+        {
+            if(command.indexOf(BATCH_SEPARATOR)>=0)
+            {
+                throw new IllegalArgumentException(String.format(ERROR_BATCH, command));
+            }
+        }
+        long beginCpuTime = readCpuTime();
+        SimonDeviceState device = getDevice(receiver_number);
+        if(device!=null)
+        {
+            plannedState.copy(device);
+        }
+        batch.setLength(0);
+        int sentCommands=0;
+        for(String command : commands)
+        {
+            if(isPlannedRedundant(receiver_number, device, command))
+            {
+                continue;
+            }
+            if(batch.length()>0 && batch.length()+1+command.length()>SimonFrame.PAYLOAD_CAPACITY) //frame is full
+            {
+                sendBatchFrame(receiver_number, device);
+                if(isPlannedRedundant(receiver_number, device, command))        //planned again after the frame was confirmed
+                {
+                    continue;
+                }
+            }
+            if(device!=null)
+            {
+                plannedState.apply(command);
+            }
+            if(sentCommands==0)
+            {
+                System.out.printf(BATCH_OUTPUT, receiver_number);
+            }
+            sentCommands++;
+            if(batch.length()>0)
+            {
+                batch.append(BATCH_SEPARATOR);
+            }
+            batch.append(command);
+            frameCommands.add(command);
+        }
+        if(sentCommands==0)                                                     //every command was skipped
+        {
+            return;
+        }
+        if(batch.length()>0)
+        {
+            sendBatchFrame(receiver_number, device);
+        }
+        cpuTime.record(readCpuTime() - beginCpuTime);
+        System.out.printf(BATCH_DONE_OUTPUT, sentCommands, commands.length);
+    }
+    
+    /**
+     * Checks if a command of a batch can be skipped because an earlier command of the batch or the receiver already set its state
+     * @author Philipp Schulz
+     * @param receiver_number the device number of the receiving device in the SIMON protocol
+     * @param device Shadow of the state of the receiver, null if commands are never skipped
+     * @param command Command of the batch
+     * @return True if the command is skipped
+     */
+    private boolean isPlannedRedundant(int receiver_number, SimonDeviceState device, String command)
+    {
+        if(device==null || !plannedState.isRedundant(command))
+        {
+            return false;
+        }
+        skippedCommands++;
+        System.out.printf(SKIP_OUTPUT, command, receiver_number);
+        return true;
+    }
+    
+    /**
+     * Sends the commands collected in the batch buffer in one frame and applies them to the shadow of the receiver once confirmed
+     * The remaining commands are planned again from the shadow, as a reset while sending the frame made the state unknown.
+     * @author Philipp Schulz
+     * @param receiver_number the device number of the receiving device in the SIMON protocol
+     * @param device Shadow of the state of the receiver, null if commands are never skipped
+     */
+    private void sendBatchFrame(int receiver_number, SimonDeviceState device)
+    {
+        transmitFrame.encode(receiver_number, batch);
+        sendConfirmed(transmitFrame);
+        if(device!=null)
+        {
+            for(String command : frameCommands)
+            {
+                device.apply(command);
+            }
+            plannedState.copy(device);
+        }
+        batch.setLength(0);
+        frameCommands.clear();
+    }
+    
+    /**
+     * Method for sending a large block of data, e.g. a servo keyframe table, in framed mode
+     * The block is split into chunks of SimonFrame.CHUNK_SIZE bytes, every chunk carries its length and is confirmed on its own.
+     * The microcontroller only holds SimonFrame.MAXIMUM_BLOCK bytes and never confirms a chunk past them, so larger blocks are rejected.
+     * @author Philipp Schulz
+     * @param receiver_number the device number of the receiving device in the SIMON protocol, up to 127
+     * @param block the data that should be send to the receiver, up to SimonFrame.MAXIMUM_BLOCK bytes
+     * @throws IllegalArgumentException When the block is empty or too large
+     */
+    public synchronized void sendSIMONBlock(int receiver_number,byte[] block)
+    {
+        if(block.length == 0 || block.length > SimonFrame.MAXIMUM_BLOCK)
+        {
+            throw new IllegalArgumentException(String.format(ERROR_BLOCK, block.length, SimonFrame.MAXIMUM_BLOCK));
+        }
+        System.out.printf(BLOCK_OUTPUT, block.length, receiver_number);
+        long beginCpuTime = readCpuTime();
+        SimonDeviceState device = getDevice(receiver_number);
+        if(device!=null)
+        {
+            device.invalidate();                                                //the content of a block is not modelled by the shadow
+        }
+        blockId=(blockId+1)&0xFF;                                               //new block id, so that the receiver can tell it from repeated chunks
+        int chunkCount=(block.length+SimonFrame.CHUNK_SIZE-1)/SimonFrame.CHUNK_SIZE; //number of chunks the block is split into
+        for(int i=0;i<chunkCount;i++)                                           //send every chunk and wait for its confirmation
+        {
+            int offset=i*SimonFrame.CHUNK_SIZE;
+            transmitFrame.encodeChunk(receiver_number, blockId, i, chunkCount, block, offset, Math.min(SimonFrame.CHUNK_SIZE, block.length-offset));
+            sendConfirmed(transmitFrame);
+        }
+        cpuTime.record(readCpuTime() - beginCpuTime);
+        System.out.println("sending done");
+    }
+    
+    /**
+     * Sends a frame until the receiver confirmed it, the protocol is reset after 5 failed trials
+     * @author Philipp Schulz
+     * @param frame Frame that should be sent
+     */
+    private void sendConfirmed(SimonFrame frame)
+    {
         int trialCounter=0;
         boolean confirmation = false;                                           //Boolean value to control the do-while-loop
         do                                                                      //main loop
         {
-            String binaryCommand=textToBinary(command);                         //convert command to binary String
-            String binaryString=intToBinary(receiver_number)+binaryCommand+getFletcher16Checksums(binaryCommand);//create complete binary data package to send
-            sendDataString(binaryString);                                       //send the binary data String
-            String readBinaryData = readData();                                 //read the answer
-            if("11111111".equals(readBinaryData))                               //if the receiver confirmed transmission
+            sendFrame(frame);                                                   //send the frame
+            sentFrames++;
+            readData(receiveFrame);                                             //read the answer
+            if(receiveFrame.isAck())                                            //if the receiver confirmed transmission
             {
               confirmation=true;                                                //break main loop
             }
             else
             {
                 trialCounter++;
+                retries++;
             }
             if(trialCounter==5)
             {
@@ -334,12 +517,10 @@ public class SIMON
                 trialCounter=0;
             }
         }while(!confirmation);                                                  //main loop depends on boolean value confirmation
-        dataPin.setMode(PinMode.DIGITAL_OUTPUT);                                //set the dataPin as an output
+        dataPin.setOutput();                                                    //set the dataPin as an output
         dataPin.high();                                                         //configure dataPin as high
-        busyWaitMillis(5*minimumSignalLength);
-        dataPin.setMode(PinMode.DIGITAL_INPUT);
-        dataPin.setPullResistance(PinPullResistance.PULL_UP);                   //configure data line as an input to enable communication
-        System.out.println("sending done");
+        waitMillis(5*minimumSignalLength);
+        dataPin.setInput();                                                     //configure data line as an input to enable communication
     }
     
     /**
@@ -351,17 +532,10 @@ public class SIMON
     {
         int trialCounter=0;
         boolean confirmation = false;                                           //Boolean value to control the do-while-loop
-        String command="";                                                      //initialize String to return
         do                                                                      //main loop
         {
-            String receivedData = readData();                                   //read data from sender
-            String receivedBinaryNumber = receivedData.substring(0,8);          //binary receiver number
-            int receivedNumber = binaryToInt(receivedBinaryNumber);             //convert binary receiver number to integer
-            String textData=receivedData.substring(8,receivedData.length()-16); //get binary text
-            command=binaryToText(textData);                                     //convert binary to text
-            String receivedChecksums = receivedData.substring(receivedData.length()-16); //convert binary to checksums
-            String ownChecksums=getFletcher16Checksums(textData);               //calculate own checksums
-            if(receivedChecksums.equals(ownChecksums)&&ownNumber==receivedNumber)//compare received and calculated checksums
+            readData(receiveFrame);                                             //read data from sender
+            if(receiveFrame.isValid()&&!receiveFrame.isFramed()&&ownNumber==receiveFrame.getReceiver())   //compare received and calculated checksums
             {
                 confirmation=true;                                              //break main loop
             }
@@ -375,27 +549,121 @@ public class SIMON
                 trialCounter=0;
             }
         }while(!confirmation);                                                  //main loop depends on boolean value confirmation
-        return command;                                                         //return received command as text
+        return receiveFrame.getPayload();                                       //return received command as text
     }
     
     /**
-     * method for getting the checksums from Fletcher-16 for a given binary data String
-     * @param binaryData Binary String for which the checksums should be created
-     * @return Checksums in a binary string in the format: "sum1sum2"
+     * Returns the CPU time of the current thread, or the wall clock time if the JVM does not measure CPU time
+     * @author Philipp Schulz
+     * @return Time stamp in nanoseconds
      */
-    private String getFletcher16Checksums(String binaryData)
+    private long readCpuTime()
     {
-        int sumFletcher1=0;                                                     //reset sum1
-        int sumFletcher2=0;                                                     //reset sum2
-        int length=binaryData.length()/8;                                       //calculate number of blocks of 8
-        for(byte i=0;i<length;i++)                                              //loop over data String for each block and calculate the sums
-        {
-            sumFletcher1=(sumFletcher1+binaryToInt(binaryData.substring(i*8,i*8+8))) % 255; //calculate checksum1
-            sumFletcher2=(sumFletcher1+sumFletcher2) % 255;                     //calculate checksum2
-        }
-        return intToBinary(sumFletcher1)+intToBinary(sumFletcher2);             //return checksums as binary String
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
     }
     
+    /**
+     * Returns the timing engine, which reports the accuracy of the sent pulse widths
+     * @author Philipp Schulz
+     * @return Timing engine of the protocol
+     */
+    public SimonTimer getTimer()
+    {
+        return timer;
+    }
+    
+    /**
+     * Returns the buffer the edges of the data line are captured in
+     * @author Philipp Schulz
+     * @return Edge capture of the protocol, null if the data line is polled
+     */
+    public SimonEdgeCapture getEdgeCapture()
+    {
+        return capture;
+    }
+    
+    /**
+     * Returns the classifier of the received pulses, which reports their jitter
+     * @author Philipp Schulz
+     * @return Pulse classifier of the protocol
+     */
+    public SimonPulseClassifier getClassifier()
+    {
+        return classifier;
+    }
+    
+    /**
+     * Returns the histogram of the CPU time used per call of sendSIMONData, sendSIMONBatch or sendSIMONBlock
+     * @author Philipp Schulz
+     * @return Histogram of the CPU time per transaction
+     */
+    public LatencyHistogram getCpuTime()
+    {
+        return cpuTime;
+    }
+    
+    /**
+     * Returns the shadow of the state of a receiver, which is created when the receiver is used for the first time
+     * @author Philipp Schulz
+     * @param receiver_number the device number of the receiving device in the SIMON protocol
+     * @return Shadow of the state, null if commands are never skipped
+     */
+    private SimonDeviceState getDevice(int receiver_number)
+    {
+        return devices == null ? null : devices.computeIfAbsent(receiver_number, receiver -> new SimonDeviceState());
+    }
+    
+    /**
+     * Returns the state of a receiver as the host last set it
+     * @author Philipp Schulz
+     * @param receiver_number the device number of the receiving device in the SIMON protocol
+     * @return Summary of the state with unknown parts shown as "?", null if commands are never skipped
+     */
+    public synchronized String getDeviceState(int receiver_number)
+    {
+        SimonDeviceState device = getDevice(receiver_number);
+        return device == null ? null : device.toString();
+    }
+    
+    /**
+     * Returns the number of commands that were not sent because the receiver was already in the state they set
+     * @author Philipp Schulz
+     * @return Number of skipped commands
+     */
+    public synchronized long getSkippedCommands()
+    {
+        return skippedCommands;
+    }
+    
+    /**
+     * Returns the number of frames sent by sendSIMONData, sendSIMONBatch and sendSIMONBlock, including the repeated ones
+     * @author Philipp Schulz
+     * @return Number of sent frames
+     */
+    public synchronized long getSentFrames()
+    {
+        return sentFrames;
+    }
+    
+    /**
+     * Returns the number of frames that had to be sent again because they were not confirmed
+     * @author Philipp Schulz
+     * @return Number of retries
+     */
+    public synchronized long getRetries()
+    {
+        return retries;
+    }
+    
+    /**
+     * Returns how often the protocol was reset after failed transmissions
+     * @author Philipp Schulz
+     * @return Number of resets
+     */
+    public synchronized long getResets()
+    {
+        return resets;
+    }
     
     /**
      * method to determine if a given binary String contains more zeros or ones
@@ -0,0 +1,126 @@
+package control;
+
+import java.util.Arrays;
+import java.util.List;
+import model.LatencyHistogram;
+
+/**
+ * Measures throughput, latency and retry rate of the SIMON protocol against the simulated microcontroller
+ * Runs on any machine, no GPIO pins are used
+ * The timing engine is chosen with -Dglados.simon.timer=hybrid or spin, so that the CPU time of both can be compared
+ * Answers are received from captured edges, -Dglados.simon.polling=true polls the line instead
+ * A dispatch latency delivers the captured edges late and possibly out of order, like the event threads of Pi4J would
+ * Commands that would not change the state of the simulated body are skipped, -Dglados.simon.shadow=false sends all of them
+ * @author Philipp Schulz
+ */
+public class SimonBenchmark
+{
+    private static final String[] COMMANDS = {"1 1", "4 5 7 5 5", "1 0", "2 1", "3 0", "2 0"};
+    private static final int RECEIVER = 2;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final double MILLIS_PER_SECOND = 1000.0;
+    private static final String USAGE = "usage: SimonBenchmark <commands> <jitter in us> <bit error rate> [seed] [block bytes] [batch size] [dispatch latency in us]";
+    private static final String RESULT_OUTPUT = "SIMON: %d commands, %d bytes in %d ms, %.1f commands/s, %.1f payload bytes/s%n";
+    private static final String RETRY_OUTPUT = "SIMON: %d frames sent, %d retries (%.1f%%), %d resets%n";
+    private static final String SKIP_OUTPUT = "SIMON: %d commands skipped, state of the body: %s%n";
+    private static final String ERROR_LOST = "SIMON: peer received %d of %d commands that were not skipped%n";
+    private static final String BLOCK_RESULT_OUTPUT = "SIMON: block of %d bytes in %d ms, %.1f bytes/s, received %s%n";
+    private static final String BLOCK_INTACT = "intact";
+    private static final String BLOCK_BROKEN = "broken";
+    private static final int SERVO_POSITIONS = 11;
+
+    private SimonBenchmark()
+    {
+    }
+
+    /**
+     * Sends a number of typical commands over the simulated bus and prints the results
+     * @author Philipp Schulz
+     * @param args Number of commands, timing jitter in microseconds, bit error rate, an optional seed, an optional block size and
+     * an optional number of commands sent together in one batch and an optional dispatch latency of the captured edges in microseconds
+     */
+    public static void main(String[] args)
+    {
+        if(args.length < 3)
+        {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        int count = Integer.parseInt(args[0]);
+        int jitter = Integer.parseInt(args[1]);
+        double bitErrorRate = Double.parseDouble(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        int blockSize = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        int batchSize = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        int dispatchLatency = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+        SimulatedSimonBus bus = new SimulatedSimonBus(jitter, bitErrorRate, dispatchLatency, seed);
+        SIMON simon = new SIMON(bus);
+        simon.beginSIMON();
+        LatencyHistogram latency = new LatencyHistogram("SIMON: transaction latency");
+        long bytes = 0;
+        long beginTime = System.nanoTime();
+        for(int i = 0; i < count; i += batchSize)
+        {
+            String[] batch = new String[Math.min(batchSize, count - i)];
+            for(int j = 0; j < batch.length; j++)
+            {
+                batch[j] = COMMANDS[(i + j) % COMMANDS.length];
+                bytes += batch[j].length();
+            }
+            long sendTime = System.nanoTime();
+            if(batchSize > 1)
+            {
+                simon.sendSIMONBatch(RECEIVER, batch);
+            }
+            else
+            {
+                simon.sendSIMONData(RECEIVER, batch[0]);
+            }
+            latency.record(System.nanoTime() - sendTime);
+        }
+        long totalMillis = (System.nanoTime() - beginTime) / NANOS_PER_MILLI;
+        System.out.printf(RESULT_OUTPUT, count, bytes, totalMillis, count * MILLIS_PER_SECOND / totalMillis, bytes * MILLIS_PER_SECOND / totalMillis);
+        System.out.printf(RETRY_OUTPUT, simon.getSentFrames(), simon.getRetries(), 100.0 * simon.getRetries() / simon.getSentFrames(), simon.getResets());
+        System.out.println(latency);
+        System.out.println(simon.getCpuTime());
+        System.out.println(simon.getTimer());
+        System.out.println(simon.getClassifier());
+        if(simon.getEdgeCapture() != null)
+        {
+            System.out.println(simon.getEdgeCapture());
+        }
+        System.out.printf(SKIP_OUTPUT, simon.getSkippedCommands(), simon.getDeviceState(RECEIVER));
+        System.out.println(bus);
+        if(bus.getReceivedCommands().size() < count - simon.getSkippedCommands())
+        {
+            System.out.printf(ERROR_LOST, bus.getReceivedCommands().size(), count - simon.getSkippedCommands());
+        }
+        if(blockSize > 0)
+        {
+            sendBlock(simon, bus, blockSize);
+        }
+    }
+
+    /**
+     * Sends a servo keyframe table of the given size in framed mode and checks that it arrived unchanged
+     * @author Philipp Schulz
+     * @param simon Protocol instance on the simulated bus
+     * @param bus Simulated bus
+     * @param blockSize Number of bytes of the block
+     */
+    private static void sendBlock(SIMON simon, SimulatedSimonBus bus, int blockSize)
+    {
+        byte[] block = new byte[blockSize];
+        for(int i = 0; i < blockSize; i++)
+        {
+            block[i] = (byte) (i % SERVO_POSITIONS);
+        }
+        long beginTime = System.nanoTime();
+        simon.sendSIMONBlock(RECEIVER, block);
+        long totalMillis = (System.nanoTime() - beginTime) / NANOS_PER_MILLI;
+        List<byte[]> blocks = bus.getReceivedBlocks();
+        boolean intact = !blocks.isEmpty() && Arrays.equals(blocks.get(blocks.size() - 1), block);
+        System.out.printf(BLOCK_RESULT_OUTPUT, blockSize, totalMillis, blockSize * MILLIS_PER_SECOND / totalMillis, intact ? BLOCK_INTACT : BLOCK_BROKEN);
+        System.out.println(bus);
+    }
+}
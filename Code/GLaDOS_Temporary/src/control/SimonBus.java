@@ -0,0 +1,71 @@
+package control;
+
+/**
+ * Pin operations of the data line of the SIMON protocol, implemented by the GPIO pin of the Raspberry Pi or by a simulated bus
+ * The line is pulled up while it is an input, so an idle line reads high
+ * @author Philipp Schulz
+ */
+public interface SimonBus
+{
+    /**
+     * Acquires the data line and configures it as an input with pull-up resistor
+     * @author Philipp Schulz
+     */
+    void open();
+    
+    /**
+     * Releases the data line and everything that belongs to it, open has to be called afterwards
+     * @author Philipp Schulz
+     */
+    void reset();
+    
+    /**
+     * Configures the data line as an output
+     * @author Philipp Schulz
+     */
+    void setOutput();
+    
+    /**
+     * Configures the data line as an input with pull-up resistor, so that the other device can drive it
+     * @author Philipp Schulz
+     */
+    void setInput();
+    
+    /**
+     * Drives the data line high, only while it is an output
+     * @author Philipp Schulz
+     */
+    void high();
+    
+    /**
+     * Drives the data line low, only while it is an output
+     * @author Philipp Schulz
+     */
+    void low();
+    
+    /**
+     * Reads the data line
+     * @author Philipp Schulz
+     * @return True if the data line is high
+     */
+    boolean isHigh();
+    
+    /**
+     * Reads the data line
+     * @author Philipp Schulz
+     * @return True if the data line is low
+     */
+    boolean isLow();
+    
+    /**
+     * Reports every edge of the data line with its time stamp to a capture buffer, while the line is an input
+     * Edges caused by this side while the line is an output may be reported as well
+     * @author Philipp Schulz
+     * @param capture Buffer the edges are written to
+     * @return True if the bus supports edge events, false if the line has to be polled
+     */
+    default boolean captureEdges(SimonEdgeCapture capture)
+    {
+        return false;
+    }
+}
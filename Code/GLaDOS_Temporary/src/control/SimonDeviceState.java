@@ -0,0 +1,199 @@
+package control;
+
+/**
+ * Shadow of the state of a body as the host last set it: eye, LEDs, servo power and servo positions
+ * The state is only changed by commands the body confirmed, so a command that would not change it can be skipped.
+ * Every part of the state is unknown until a command set it, and becomes unknown again when the protocol is reset or a command
+ * is sent that is not modelled here. The model follows the command handler of the body: "4 ..." turns the servos on, moves them
+ * and turns them off again.
+ * @author Philipp Schulz
+ */
+public class SimonDeviceState
+{
+    private int eye;
+    private int leds;
+    private int servoPower;
+    private String servoPositions;
+
+    private static final int UNKNOWN = -1;
+    private static final int OFF = 0;
+    private static final int ON = 1;
+    private static final char MODE_EYE = '1';
+    private static final char MODE_LEDS = '2';
+    private static final char MODE_SERVO_POWER = '3';
+    private static final char MODE_SERVO_POSITIONS = '4';
+    private static final int STATE_LENGTH = 3;
+    private static final int POSITIONS_LENGTH = 9;
+    private static final int ARGUMENTS = 2;
+    private static final char SEPARATOR = ' ';
+    private static final String OUTPUT = "eye %s, LEDs %s, servo power %s, servo positions %s";
+    private static final String UNKNOWN_OUTPUT = "?";
+
+    /**
+     * Creates a shadow with an unknown state
+     * @author Philipp Schulz
+     */
+    public SimonDeviceState()
+    {
+        invalidate();
+    }
+
+    /**
+     * Forgets the whole state, the next command for every part of it is sent
+     * @author Philipp Schulz
+     */
+    public void invalidate()
+    {
+        eye = UNKNOWN;
+        leds = UNKNOWN;
+        servoPower = UNKNOWN;
+        servoPositions = null;
+    }
+
+    /**
+     * Copies the state of another shadow
+     * @author Philipp Schulz
+     * @param other Shadow whose state is copied
+     */
+    public void copy(SimonDeviceState other)
+    {
+        eye = other.eye;
+        leds = other.leds;
+        servoPower = other.servoPower;
+        servoPositions = other.servoPositions;
+    }
+
+    /**
+     * Checks if a command would leave the state of the body as it is
+     * @author Philipp Schulz
+     * @param command Command like "2 1" or "4 5 7 5 5"
+     * @return True if the command can be skipped, false if it changes the state or is not modelled
+     */
+    public boolean isRedundant(String command)
+    {
+        if(isState(command))
+        {
+            int state = getState(command);
+            switch(command.charAt(0))
+            {
+                case MODE_EYE:
+                    return eye == state;
+                case MODE_LEDS:
+                    return leds == state;
+                default:
+                    return servoPower == state;
+            }
+        }
+        if(isPositions(command))
+        {
+            return servoPower == OFF && servoPositions != null && command.regionMatches(ARGUMENTS, servoPositions, 0, servoPositions.length());
+        }
+        return false;
+    }
+
+    /**
+     * Updates the state with a command the body confirmed, a command that is not modelled makes the whole state unknown
+     * @author Philipp Schulz
+     * @param command Command like "2 1" or "4 5 7 5 5"
+     */
+    public void apply(String command)
+    {
+        if(isState(command))
+        {
+            int state = getState(command);
+            switch(command.charAt(0))
+            {
+                case MODE_EYE:
+                    eye = state;
+                    break;
+                case MODE_LEDS:
+                    leds = state;
+                    break;
+                default:
+                    servoPower = state;
+                    break;
+            }
+        }
+        else if(isPositions(command))
+        {
+            servoPositions = command.substring(ARGUMENTS);
+            servoPower = OFF;                                                   //the body turns the servos off after moving them
+        }
+        else
+        {
+            invalidate();
+        }
+    }
+
+    /**
+     * Checks if a command sets the eye, the LEDs or the servo power to 0 or 1
+     * @author Philipp Schulz
+     * @param command Command that should be checked
+     * @return True for commands like "1 0"
+     */
+    private boolean isState(String command)
+    {
+        if(command.length() != STATE_LENGTH || command.charAt(1) != SEPARATOR)
+        {
+            return false;
+        }
+        char mode = command.charAt(0);
+        char state = command.charAt(ARGUMENTS);
+        return (mode == MODE_EYE || mode == MODE_LEDS || mode == MODE_SERVO_POWER) && (state == '0' || state == '1');
+    }
+
+    /**
+     * Checks if a command moves the servos to positions of a single digit, the only ones the body accepts
+     * @author Philipp Schulz
+     * @param command Command that should be checked
+     * @return True for commands like "4 5 7 5 5"
+     */
+    private boolean isPositions(String command)
+    {
+        if(command.length() != POSITIONS_LENGTH || command.charAt(0) != MODE_SERVO_POSITIONS)
+        {
+            return false;
+        }
+        for(int i = 1; i < POSITIONS_LENGTH; i += 2)
+        {
+            if(command.charAt(i) != SEPARATOR || !Character.isDigit(command.charAt(i + 1)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the state a command sets
+     * @author Philipp Schulz
+     * @param command Command like "1 0"
+     * @return 0 for off, 1 for on
+     */
+    private int getState(String command)
+    {
+        return command.charAt(ARGUMENTS) == '1' ? ON : OFF;
+    }
+
+    /**
+     * Returns a summary of the state, unknown parts are shown as "?"
+     * @author Philipp Schulz
+     * @return State of eye, LEDs and servos
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(OUTPUT, format(eye), format(leds), format(servoPower), servoPositions == null ? UNKNOWN_OUTPUT : servoPositions);
+    }
+
+    /**
+     * Formats a part of the state
+     * @author Philipp Schulz
+     * @param state State that should be formatted
+     * @return "0", "1" or "?"
+     */
+    private String format(int state)
+    {
+        return state == UNKNOWN ? UNKNOWN_OUTPUT : Integer.toString(state);
+    }
+}
@@ -0,0 +1,202 @@
+package control;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring buffer of the edges of the SIMON data line with their System.nanoTime() time stamps
+ * The edges are written by the event threads of the bus and read by the thread running the protocol, which is parked while it waits
+ * for the next edge. Writers are serialized, only one thread may read.
+ * An edge whose time stamp is older than the one before, or that repeats the level of the edge before, was reported out of order
+ * or is a duplicate. It is rejected, so the reader always sees alternating levels with increasing time stamps. A frame that
+ * lost an edge this way fails its checksum and is sent again.
+ * @author Philipp Schulz
+ */
+public class SimonEdgeCapture
+{
+    private final long[] times;
+    private final boolean[] levels;
+    private final int mask;
+    private volatile long written;
+    private volatile Thread waiter;
+    private long read;
+    private boolean level;
+    private long time;
+    private volatile long overruns;                                             //only counted by the reader, read by any thread
+    private boolean lastLevel;
+    private long lastTime;
+    private long rejected;
+
+    private static final int DEFAULT_CAPACITY = 2048;
+    private static final String OUTPUT = "SIMON: %d edges captured, %d rejected out of order, %d lost to overruns";
+
+    /**
+     * Creates a capture buffer with room for 2048 edges
+     * @author Philipp Schulz
+     */
+    public SimonEdgeCapture()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a capture buffer
+     * @author Philipp Schulz
+     * @param capacity Number of edges that can be stored before the oldest ones are overwritten, rounded up to a power of two
+     */
+    public SimonEdgeCapture(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.times = new long[size];
+        this.levels = new boolean[size];
+        this.mask = size - 1;
+        this.level = true;
+        this.lastLevel = true;
+    }
+
+    /**
+     * Stores an edge and wakes up the waiting reader, called by the bus for every change of the line
+     * @author Philipp Schulz
+     * @param edgeLevel Level of the line after the edge
+     * @param edgeTime Time stamp of the edge from System.nanoTime()
+     */
+    public synchronized void edge(boolean edgeLevel, long edgeTime)
+    {
+        long index = written;
+        if(edgeLevel == lastLevel || (index > 0 && edgeTime - lastTime < 0))    //reordered or repeated edge
+        {
+            rejected++;
+            return;
+        }
+        lastLevel = edgeLevel;
+        lastTime = edgeTime;
+        times[(int) (index & mask)] = edgeTime;
+        levels[(int) (index & mask)] = edgeLevel;
+        written = index + 1;
+        Thread thread = waiter;
+        if(thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Discards all edges that have not been read, the current level becomes the level after the last of them
+     * @author Philipp Schulz
+     */
+    public void skip()
+    {
+        long end = written;
+        if(end > read)
+        {
+            int index = (int) ((end - 1) & mask);
+            time = times[index];
+            level = levels[index];
+            read = end;
+        }
+    }
+
+    /**
+     * Reads the next edge, parks the thread until it arrives or the deadline has passed
+     * @author Philipp Schulz
+     * @param deadline Time stamp from System.nanoTime() until which the edge is waited for
+     * @return True if an edge was read, its level and time are returned by isHigh, isLow and getTime
+     */
+    public boolean next(long deadline)
+    {
+        while(true)
+        {
+            long end = written;
+            if(end - read > times.length)                                       //the writer overwrote edges that were not read yet
+            {
+                overruns += end - read - times.length;
+                read = end - times.length;
+            }
+            if(read < end)
+            {
+                int index = (int) (read & mask);
+                long edgeTime = times[index];
+                boolean edgeLevel = levels[index];
+                if(written - read > times.length)                               //overwritten while being read
+                {
+                    continue;
+                }
+                time = edgeTime;
+                level = edgeLevel;
+                read++;
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+            {
+                return false;
+            }
+            waiter = Thread.currentThread();
+            if(written == end)
+            {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waiter = null;
+        }
+    }
+
+    /**
+     * Returns the level after the last read edge
+     * @author Philipp Schulz
+     * @return True if the line is high
+     */
+    public boolean isHigh()
+    {
+        return level;
+    }
+
+    /**
+     * Returns the level after the last read edge
+     * @author Philipp Schulz
+     * @return True if the line is low
+     */
+    public boolean isLow()
+    {
+        return !level;
+    }
+
+    /**
+     * Returns the time stamp of the last read edge
+     * @author Philipp Schulz
+     * @return Time stamp from System.nanoTime()
+     */
+    public long getTime()
+    {
+        return time;
+    }
+
+    /**
+     * Returns the number of edges that were lost because the reader did not keep up
+     * @author Philipp Schulz
+     * @return Number of overwritten edges
+     */
+    public long getOverruns()
+    {
+        return overruns;
+    }
+
+    /**
+     * Returns the number of edges that were rejected because they were reported out of order or repeated the level before
+     * @author Philipp Schulz
+     * @return Number of rejected edges
+     */
+    public synchronized long getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * Returns a summary of the captured edges
+     * @author Philipp Schulz
+     * @return Number of stored, rejected and overwritten edges
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(OUTPUT, written, rejected, overruns);
+    }
+}
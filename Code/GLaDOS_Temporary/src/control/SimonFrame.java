@@ -0,0 +1,349 @@
+package control;
+
+import java.util.Arrays;
+
+/**
+ * Frame of the SIMON protocol in a preallocated byte array: receiver number, ASCII payload and Fletcher-16 checksums sum1, sum2
+ * The bits are sent from the most significant bit of the first byte on, which is the same order as the binary Strings used before
+ * A frame is reused for every transmission, encoding and decoding do not allocate unless a frame is longer than all frames before,
+ * then the buffer grows, so that commands of any length can still be sent like before
+ * In framed mode the highest bit of the receiver number is set and the payload starts with a header of block id, chunk index,
+ * chunk count and chunk length, so that a large block is sent as a series of chunks that are checksummed and acknowledged one by one
+ * @author Philipp Schulz
+ */
+public class SimonFrame
+{
+    public static final int PAYLOAD_CAPACITY = 64;
+    public static final int CHUNK_SIZE = 32;
+    public static final int MAXIMUM_CHUNKS = 255;
+    public static final int MAXIMUM_BLOCK = 256;                               //block buffer of the microcontroller, larger blocks are never confirmed
+
+    private byte[] data;
+    private int bitCount;
+
+    private static final int HEADER_LENGTH = 1;
+    private static final int CHECKSUM_LENGTH = 2;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int BIT_INDEX_MASK = 7;
+    private static final int BYTE_SHIFT = 3;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int FRAMED = 0x80;
+    private static final int RECEIVER_MASK = 0x7F;
+    private static final int BLOCK_ID = 0;
+    private static final int CHUNK_INDEX = 1;
+    private static final int CHUNK_COUNT = 2;
+    private static final int CHUNK_LENGTH = 3;
+    private static final int CHUNK_HEADER_LENGTH = 4;
+    private static final int FLETCHER_MODULO = 255;
+    private static final int ACK = 0xFF;
+    private static final String ERROR_CHUNK = "SIMON: chunk %d of %d with %d bytes is not valid";
+
+    /**
+     * Creates an empty frame with room for PAYLOAD_CAPACITY bytes of payload
+     * @author Philipp Schulz
+     */
+    public SimonFrame()
+    {
+        this.data = new byte[HEADER_LENGTH + PAYLOAD_CAPACITY + CHECKSUM_LENGTH];
+    }
+
+    /**
+     * Grows the buffer of the frame, at least doubling it so that a series of longer frames only grows it a few times
+     * @author Philipp Schulz
+     * @param length Number of bytes the buffer has to hold
+     */
+    private void ensureCapacity(int length)
+    {
+        if(length > data.length)
+        {
+            data = Arrays.copyOf(data, Math.max(length, data.length * 2));
+        }
+    }
+
+    /**
+     * Encodes a command for a receiver into the frame
+     * @author Philipp Schulz
+     * @param receiver Device number of the receiver
+     * @param command ASCII text of the command
+     */
+    public void encode(int receiver, CharSequence command)
+    {
+        int length = command.length();
+        ensureCapacity(HEADER_LENGTH + length + CHECKSUM_LENGTH);
+        data[0] = (byte) receiver;
+        for(int i = 0; i < length; i++)
+        {
+            data[HEADER_LENGTH + i] = (byte) command.charAt(i);
+        }
+        finish(length);
+    }
+
+    /**
+     * Encodes one chunk of a large block into the frame in framed mode
+     * @author Philipp Schulz
+     * @param receiver Device number of the receiver, up to 127
+     * @param blockId Number of the block, so that the receiver can tell a repeated chunk from the start of a new block
+     * @param index Index of the chunk inside of the block
+     * @param count Number of chunks of the block
+     * @param block Array containing the block
+     * @param offset Index of the first byte of the chunk inside of the array
+     * @param length Number of bytes of the chunk, up to CHUNK_SIZE
+     * @throws IllegalArgumentException When index, count or length are out of range
+     */
+    public void encodeChunk(int receiver, int blockId, int index, int count, byte[] block, int offset, int length)
+    {
+        if(length < 0 || length > CHUNK_SIZE || count < 1 || count > MAXIMUM_CHUNKS || index < 0 || index >= count)
+        {
+            throw new IllegalArgumentException(String.format(ERROR_CHUNK, index, count, length));
+        }
+        data[0] = (byte) (FRAMED | receiver);
+        data[HEADER_LENGTH + BLOCK_ID] = (byte) blockId;
+        data[HEADER_LENGTH + CHUNK_INDEX] = (byte) index;
+        data[HEADER_LENGTH + CHUNK_COUNT] = (byte) count;
+        data[HEADER_LENGTH + CHUNK_LENGTH] = (byte) length;
+        System.arraycopy(block, offset, data, HEADER_LENGTH + CHUNK_HEADER_LENGTH, length);
+        finish(CHUNK_HEADER_LENGTH + length);
+    }
+
+    /**
+     * Appends the checksums of the payload and sets the length of the frame
+     * @author Philipp Schulz
+     * @param length Number of payload bytes
+     */
+    private void finish(int length)
+    {
+        int checksums = fletcher16(data, HEADER_LENGTH, length);
+        data[HEADER_LENGTH + length] = (byte) (checksums >> BITS_PER_BYTE);
+        data[HEADER_LENGTH + length + 1] = (byte) checksums;
+        bitCount = (HEADER_LENGTH + length + CHECKSUM_LENGTH) * BITS_PER_BYTE;
+    }
+
+    /**
+     * Encodes the ack "11111111" a receiver answers a valid frame with
+     * @author Philipp Schulz
+     */
+    public void encodeAck()
+    {
+        data[0] = (byte) ACK;
+        bitCount = BITS_PER_BYTE;
+    }
+
+    /**
+     * Empties the frame before bits are received into it
+     * @author Philipp Schulz
+     */
+    public void clear()
+    {
+        bitCount = 0;
+    }
+
+    /**
+     * Appends a received bit to the frame, the buffer grows when it is full
+     * @author Philipp Schulz
+     * @param bit Received bit
+     */
+    public void appendBit(boolean bit)
+    {
+        int index = bitCount >> BYTE_SHIFT;
+        ensureCapacity(index + 1);
+        int mask = 1 << (BIT_INDEX_MASK - (bitCount & BIT_INDEX_MASK));
+        if(bit)
+        {
+            data[index] |= mask;
+        }
+        else
+        {
+            data[index] &= ~mask;
+        }
+        bitCount++;
+    }
+
+    /**
+     * Returns a bit of the frame
+     * @author Philipp Schulz
+     * @param index Index of the bit in the order it is sent
+     * @return True for a 1
+     */
+    public boolean getBit(int index)
+    {
+        return ((data[index >> BYTE_SHIFT] >> (BIT_INDEX_MASK - (index & BIT_INDEX_MASK))) & 1) == 1;
+    }
+
+    /**
+     * Returns the number of bits in the frame
+     * @author Philipp Schulz
+     * @return Number of encoded or received bits
+     */
+    public int getBitCount()
+    {
+        return bitCount;
+    }
+
+    /**
+     * Checks if the frame is the ack "11111111"
+     * @author Philipp Schulz
+     * @return True if exactly one byte with all bits set was received
+     */
+    public boolean isAck()
+    {
+        return bitCount == BITS_PER_BYTE && (data[0] & BYTE_MASK) == ACK;
+    }
+
+    /**
+     * Checks if the frame is complete and its checksums match the payload
+     * @author Philipp Schulz
+     * @return True for a valid frame
+     */
+    public boolean isValid()
+    {
+        if(bitCount % BITS_PER_BYTE != 0 || bitCount < (HEADER_LENGTH + CHECKSUM_LENGTH) * BITS_PER_BYTE)
+        {
+            return false;
+        }
+        int length = getPayloadLength();
+        int checksums = fletcher16(data, HEADER_LENGTH, length);
+        int received = (data[HEADER_LENGTH + length] & BYTE_MASK) << BITS_PER_BYTE | (data[HEADER_LENGTH + length + 1] & BYTE_MASK);
+        return checksums == received;
+    }
+
+    /**
+     * Checks if the frame is a valid chunk in framed mode, including its length header
+     * @author Philipp Schulz
+     * @return True for a valid chunk
+     */
+    public boolean isValidChunk()
+    {
+        if(!isFramed() || !isValid() || getPayloadLength() < CHUNK_HEADER_LENGTH)
+        {
+            return false;
+        }
+        return getChunkLength() == getPayloadLength() - CHUNK_HEADER_LENGTH && getChunkIndex() < getChunkCount();
+    }
+
+    /**
+     * Checks if the frame was sent in framed mode
+     * @author Philipp Schulz
+     * @return True if the highest bit of the receiver number is set
+     */
+    public boolean isFramed()
+    {
+        return (data[0] & FRAMED) != 0;
+    }
+
+    /**
+     * Returns the device number of the receiver, without the flag of the framed mode
+     * @author Philipp Schulz
+     * @return Receiver number of the frame
+     */
+    public int getReceiver()
+    {
+        return data[0] & RECEIVER_MASK;
+    }
+
+    /**
+     * Returns the block id of a chunk
+     * @author Philipp Schulz
+     * @return Number of the block the chunk belongs to
+     */
+    public int getBlockId()
+    {
+        return data[HEADER_LENGTH + BLOCK_ID] & BYTE_MASK;
+    }
+
+    /**
+     * Returns the index of a chunk inside of its block
+     * @author Philipp Schulz
+     * @return Index of the chunk
+     */
+    public int getChunkIndex()
+    {
+        return data[HEADER_LENGTH + CHUNK_INDEX] & BYTE_MASK;
+    }
+
+    /**
+     * Returns the number of chunks of the block
+     * @author Philipp Schulz
+     * @return Number of chunks
+     */
+    public int getChunkCount()
+    {
+        return data[HEADER_LENGTH + CHUNK_COUNT] & BYTE_MASK;
+    }
+
+    /**
+     * Returns the length given in the header of a chunk
+     * @author Philipp Schulz
+     * @return Number of data bytes of the chunk
+     */
+    public int getChunkLength()
+    {
+        return data[HEADER_LENGTH + CHUNK_LENGTH] & BYTE_MASK;
+    }
+
+    /**
+     * Copies the data of a chunk into an array
+     * @author Philipp Schulz
+     * @param destination Array the data is copied to
+     * @param offset Index inside of the array the data is copied to
+     */
+    public void copyChunk(byte[] destination, int offset)
+    {
+        System.arraycopy(data, HEADER_LENGTH + CHUNK_HEADER_LENGTH, destination, offset, getChunkLength());
+    }
+
+    /**
+     * Returns the length of the payload
+     * @author Philipp Schulz
+     * @return Number of payload bytes
+     */
+    public int getPayloadLength()
+    {
+        return Math.max(0, bitCount / BITS_PER_BYTE - HEADER_LENGTH - CHECKSUM_LENGTH);
+    }
+
+    /**
+     * Appends the payload as ASCII text to a builder
+     * @author Philipp Schulz
+     * @param text Builder the payload is appended to
+     */
+    public void appendPayload(StringBuilder text)
+    {
+        int length = getPayloadLength();
+        for(int i = 0; i < length; i++)
+        {
+            text.append((char) (data[HEADER_LENGTH + i] & BYTE_MASK));
+        }
+    }
+
+    /**
+     * Returns the payload as ASCII text
+     * @author Philipp Schulz
+     * @return Text of the payload
+     */
+    public String getPayload()
+    {
+        StringBuilder text = new StringBuilder(getPayloadLength());
+        appendPayload(text);
+        return text.toString();
+    }
+
+    /**
+     * Calculates the Fletcher-16 checksums of a part of an array
+     * @author Philipp Schulz
+     * @param bytes Array containing the data
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     * @return sum1 in the high byte and sum2 in the low byte, the order they are sent in
+     */
+    public static int fletcher16(byte[] bytes, int offset, int length)
+    {
+        int sum1 = 0;
+        int sum2 = 0;
+        for(int i = offset; i < offset + length; i++)
+        {
+            sum1 = (sum1 + (bytes[i] & BYTE_MASK)) % FLETCHER_MODULO;
+            sum2 = (sum1 + sum2) % FLETCHER_MODULO;
+        }
+        return sum1 << BITS_PER_BYTE | sum2;
+    }
+}
@@ -0,0 +1,119 @@
+package control;
+
+import model.LatencyHistogram;
+
+/**
+ * Classifies the low pulses of the SIMON protocol measured in nanoseconds as multiples of the signal unit
+ * The unit is learned from the preamble of every frame, which consists of pulses of exactly one unit, so a peer whose clock runs
+ * a little fast or slow is still decoded correctly. Every pulse is rounded to the nearest multiple of the unit instead of being
+ * truncated, and its deviation from that multiple is recorded as jitter.
+ * @author Philipp Schulz
+ */
+public class SimonPulseClassifier
+{
+    private final long nominalUnit;
+    private final LatencyHistogram jitter;
+    private long unit;
+    private long preambleSum;
+    private int preambleCount;
+    private long pulses;
+    private long marginalPulses;
+
+    private static final double MINIMUM_PREAMBLE = 0.5;
+    private static final double MAXIMUM_PREAMBLE = 1.5;
+    private static final double MARGINAL_JITTER = 0.35;
+    private static final long NANOS_PER_MICRO = 1_000L;
+    private static final double MEDIAN = 0.5;
+    private static final double PERCENTILE_99 = 0.99;
+    private static final String OUTPUT = "SIMON: %d pulses classified, unit %d us, jitter p50<%dus p99<%dus max=%dus, %d pulses close to a threshold";
+
+    /**
+     * Creates a classifier
+     * @author Philipp Schulz
+     * @param nominalUnit Nominal length of the shortest signal in nanoseconds
+     */
+    public SimonPulseClassifier(long nominalUnit)
+    {
+        this.nominalUnit = nominalUnit;
+        this.unit = nominalUnit;
+        this.jitter = new LatencyHistogram("SIMON: pulse jitter");
+    }
+
+    /**
+     * Starts a new frame, the unit is learned again from its preamble
+     * @author Philipp Schulz
+     */
+    public void beginFrame()
+    {
+        unit = nominalUnit;
+        preambleSum = 0;
+        preambleCount = 0;
+    }
+
+    /**
+     * Adds a pulse of the preamble to the learned unit, pulses that are too far from the nominal unit are not used
+     * @author Philipp Schulz
+     * @param width Width of the pulse in nanoseconds
+     */
+    public void learn(long width)
+    {
+        if(width < nominalUnit * MINIMUM_PREAMBLE || width > nominalUnit * MAXIMUM_PREAMBLE)
+        {
+            return;
+        }
+        preambleSum += width;
+        preambleCount++;
+        unit = preambleSum / preambleCount;
+    }
+
+    /**
+     * Classifies a pulse as the nearest multiple of the unit and records its jitter
+     * @author Philipp Schulz
+     * @param width Width of the pulse in nanoseconds
+     * @return Length of the pulse in units: 1 for a 0, 2 for a 1, 3 for the enable and 4 for the disable signal
+     */
+    public int classify(long width)
+    {
+        int length = (int) ((width + unit / 2) / unit);
+        long deviation = Math.abs(width - length * unit);
+        jitter.record(deviation);
+        pulses++;
+        if(deviation > unit * MARGINAL_JITTER)
+        {
+            marginalPulses++;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the unit learned from the preamble of the current frame
+     * @author Philipp Schulz
+     * @return Length of the shortest signal in nanoseconds
+     */
+    public long getUnit()
+    {
+        return unit;
+    }
+
+    /**
+     * Returns the histogram of the deviation of the pulses from the nearest multiple of the unit
+     * @author Philipp Schulz
+     * @return Histogram of the jitter
+     */
+    public LatencyHistogram getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * Returns a summary of the classified pulses
+     * @author Philipp Schulz
+     * @return Number of pulses, learned unit and jitter
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(OUTPUT, pulses, unit / NANOS_PER_MICRO, jitter.getPercentile(MEDIAN), jitter.getPercentile(PERCENTILE_99),
+                jitter.getMaximum(), marginalPulses);
+    }
+}
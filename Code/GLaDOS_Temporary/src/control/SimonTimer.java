@@ -0,0 +1,133 @@
+package control;
+
+import java.util.concurrent.locks.LockSupport;
+import model.LatencyHistogram;
+
+/**
+ * Timing engine for the pulses of the SIMON protocol
+ * In hybrid mode the thread is parked for the bulk of a wait and only spins for the final part, so other threads like the voice
+ * recognition get the CPU meanwhile. The spin window adapts to how late the thread wakes up after being parked.
+ * In spin mode the whole wait is spent spinning on System.nanoTime(), like the protocol did before.
+ * The overshoot of every wait is recorded, which is the error of the pulse widths sent by this side.
+ * @author Philipp Schulz
+ */
+public class SimonTimer
+{
+    private final boolean hybrid;
+    private final LatencyHistogram overshoot;
+    private long spinWindow;
+    private long parkLateness;
+    private long parkedNanos;
+    private long waitedNanos;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_MICRO = 1_000L;
+    private static final long INITIAL_SPIN_WINDOW = 500_000L;
+    private static final long MINIMUM_SPIN_WINDOW = 100_000L;
+    private static final long MAXIMUM_SPIN_WINDOW = 900_000L;
+    private static final long SPIN_MARGIN = 50_000L;
+    private static final int DECAY = 64;
+    private static final String MODE_HYBRID = "hybrid";
+    private static final String MODE_SPIN = "spin";
+    private static final double MEDIAN = 0.5;
+    private static final double PERCENTILE_99 = 0.99;
+    private static final String OUTPUT = "SIMON: %s timer, %.0f%% of %d ms waited parked, spin window %d us, pulse overshoot p50<%dus p99<%dus max=%dus";
+
+    /**
+     * Creates a timing engine
+     * @author Philipp Schulz
+     * @param hybrid True to park for the bulk of a wait, false to spin for the whole wait
+     */
+    public SimonTimer(boolean hybrid)
+    {
+        this.hybrid = hybrid;
+        this.overshoot = new LatencyHistogram("SIMON: pulse overshoot");
+        this.spinWindow = INITIAL_SPIN_WINDOW;
+    }
+
+    /**
+     * Waits for a given time in milliseconds
+     * @author Philipp Schulz
+     * @param millis Time in milliseconds that should be waited for
+     */
+    public void waitMillis(long millis)
+    {
+        waitUntil(System.nanoTime() + millis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * Waits until System.nanoTime() reaches a deadline
+     * @author Philipp Schulz
+     * @param deadline Time stamp from System.nanoTime() to stop at
+     */
+    public void waitUntil(long deadline)
+    {
+        long begin = System.nanoTime();
+        if(hybrid)
+        {
+            long parkUntil = deadline - spinWindow;
+            long now = begin;
+            while(parkUntil - now > 0)
+            {
+                LockSupport.parkNanos(parkUntil - now);
+                now = System.nanoTime();
+            }
+            if(parkUntil - begin > 0)
+            {
+                parkedNanos += now - begin;
+                adaptSpinWindow(now - parkUntil);
+            }
+        }
+        long now = System.nanoTime();
+        while(deadline - now > 0)                                               //spin for the final part of the wait
+        {
+            now = System.nanoTime();
+        }
+        waitedNanos += now - begin;
+        overshoot.record(now - deadline);
+    }
+
+    /**
+     * Adapts the spin window to how late the thread woke up, so that waking up late rarely makes a pulse longer
+     * @author Philipp Schulz
+     * @param lateness Time in nanoseconds the thread woke up after the end of the park
+     */
+    private void adaptSpinWindow(long lateness)
+    {
+        parkLateness = Math.max(lateness, parkLateness - parkLateness / DECAY);         //follows the peaks and slowly forgets them
+        spinWindow = Math.max(MINIMUM_SPIN_WINDOW, Math.min(MAXIMUM_SPIN_WINDOW, parkLateness + SPIN_MARGIN));
+    }
+
+    /**
+     * Returns the histogram of the time every wait ended after its deadline
+     * @author Philipp Schulz
+     * @return Histogram of the overshoot
+     */
+    public LatencyHistogram getOvershoot()
+    {
+        return overshoot;
+    }
+
+    /**
+     * Returns if the timer parks the thread
+     * @author Philipp Schulz
+     * @return True in hybrid mode
+     */
+    public boolean isHybrid()
+    {
+        return hybrid;
+    }
+
+    /**
+     * Returns a summary of the waits and the overshoot
+     * @author Philipp Schulz
+     * @return Mode, parked share of the waits and overshoot of the pulses
+     */
+    @Override
+    public String toString()
+    {
+        double parked = waitedNanos == 0 ? 0 : 100.0 * parkedNanos / waitedNanos;
+        return String.format(OUTPUT, hybrid ? MODE_HYBRID : MODE_SPIN, parked, waitedNanos / NANOS_PER_MILLI, spinWindow / NANOS_PER_MICRO,
+                overshoot.getPercentile(MEDIAN), overshoot.getPercentile(PERCENTILE_99), overshoot.getMaximum());
+    }
+}
@@ -0,0 +1,280 @@
+package control;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Sends SIMON commands on its own thread, so that callers like the voice recognition never wait for the data line
+ * Commands are queued in a bounded queue and every caller gets a future that completes once the receiver confirmed the command.
+ * A single command replaces a pending single command of the same receiver and mode before it is sent, e.g. a newer servo position
+ * "4 ..." replaces an older one and "1 0" replaces a pending "1 1". The replaced command completes together with the newer one.
+ * Batches are never replaced or merged, as their commands are meant to be executed one after another. A single command is only
+ * replaced if no batch is queued between it and the newer one, otherwise the batch would run after the newer command instead.
+ * A reset of the protocol is queued like a batch, so that callers never wait for the data line while a transmission is retried.
+ * @author Philipp Schulz
+ */
+public class SimonTransmitter
+{
+    private final SIMON simon;
+    private final int capacity;
+    private final ArrayDeque<Transmission> queue;
+    private final Thread transmitter;
+    private boolean closed;
+    private long coalesced;
+
+    private final String TRANSMITTER_NAME = "SIMON transmitter";
+    private final char MODE_SEPARATOR = ' ';
+    private final String ERROR_FULL = "SIMON: transmit queue is full, command dropped: ";
+    private final String ERROR_CLOSED = "SIMON: transmitter is closed, command dropped: ";
+    private static final String RESET_NAME = "reset";
+
+    /**
+     * Creates a transmitter and starts its thread
+     * @author Philipp Schulz
+     * @param simon Protocol instance the commands are sent with
+     * @param capacity Maximum number of transmissions waiting in the queue
+     */
+    public SimonTransmitter(SIMON simon, int capacity)
+    {
+        this.simon = simon;
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<>(capacity);
+        this.transmitter = new Thread(TRANSMITTER_NAME)
+        {
+            @Override
+            public void run()
+            {
+                runTransmitter();
+            }
+        };
+        transmitter.setDaemon(true);
+        transmitter.start();
+    }
+
+    /**
+     * Queues a single command, a pending command of the same receiver and mode is replaced by it
+     * @author Philipp Schulz
+     * @param receiver Device number of the receiver
+     * @param command Command that should be sent, e.g. "1 1"
+     * @return Future that completes when the receiver confirmed the command, completes exceptionally if the queue is full
+     */
+    public CompletableFuture<Void> send(int receiver, String command)
+    {
+        return enqueue(new Transmission(receiver, false, false, command));
+    }
+
+    /**
+     * Queues several commands that are sent in one batch frame and executed by the receiver in the given order
+     * @author Philipp Schulz
+     * @param receiver Device number of the receiver
+     * @param commands Commands that should be sent
+     * @return Future that completes when the receiver confirmed the batch, completes exceptionally if the queue is full
+     */
+    public CompletableFuture<Void> sendBatch(int receiver, String... commands)
+    {
+        return enqueue(new Transmission(receiver, true, false, commands.clone()));
+    }
+
+    /**
+     * Queues a reset of the protocol, it runs after the transmissions queued before and is never replaced
+     * @author Philipp Schulz
+     * @return Future that completes when the protocol was reset, completes exceptionally if the queue is full
+     */
+    public CompletableFuture<Void> reset()
+    {
+        return enqueue(new Transmission(0, true, true));
+    }
+
+    /**
+     * Adds a transmission to the queue, replacing a superseded single command
+     * @author Philipp Schulz
+     * @param transmission Transmission that should be sent
+     * @return Future of the transmission
+     */
+    private synchronized CompletableFuture<Void> enqueue(Transmission transmission)
+    {
+        if(closed)
+        {
+            transmission.completion.completeExceptionally(new RejectedExecutionException(ERROR_CLOSED + transmission));
+            return transmission.completion;
+        }
+        if(!transmission.batch)
+        {
+            Iterator<Transmission> pending = queue.descendingIterator();
+            while(pending.hasNext())
+            {
+                Transmission old = pending.next();
+                if(old.batch)
+                {
+                    break;                                                      //commands in front of a batch or reset have to run before it
+                }
+                if(old.receiver == transmission.receiver && getMode(old.commands[0]).equals(getMode(transmission.commands[0])))
+                {
+                    pending.remove();
+                    coalesced++;
+                    transmission.completion.whenComplete((result, error) ->
+                    {
+                        if(error != null)
+                        {
+                            old.completion.completeExceptionally(error);
+                        }
+                        else
+                        {
+                            old.completion.complete(null);
+                        }
+                    });
+                }
+            }
+        }
+        if(queue.size() >= capacity)
+        {
+            System.out.println(ERROR_FULL + transmission);
+            transmission.completion.completeExceptionally(new RejectedExecutionException(ERROR_FULL + transmission));
+            return transmission.completion;
+        }
+        queue.addLast(transmission);
+        notifyAll();
+        return transmission.completion;
+    }
+
+    /**
+     * Returns the mode of a command, which is the part in front of the first space
+     * @author Philipp Schulz
+     * @param command Command like "4 5 7 5 5"
+     * @return Mode of the command like "4"
+     */
+    private String getMode(String command)
+    {
+        int end = command.indexOf(MODE_SEPARATOR);
+        return end < 0 ? command : command.substring(0, end);
+    }
+
+    /**
+     * Main loop of the transmitter, takes one transmission after another from the queue and sends it
+     * @author Philipp Schulz
+     */
+    private void runTransmitter()
+    {
+        while(true)
+        {
+            Transmission transmission;
+            synchronized(this)
+            {
+                while(queue.isEmpty())
+                {
+                    if(closed)
+                    {
+                        return;
+                    }
+                    try
+                    {
+                        wait();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+                transmission = queue.pollFirst();
+            }
+            try
+            {
+                if(transmission.reset)
+                {
+                    simon.resetSIMON();
+                }
+                else if(transmission.batch)
+                {
+                    simon.sendSIMONBatch(transmission.receiver, transmission.commands);
+                }
+                else
+                {
+                    simon.sendSIMONData(transmission.receiver, transmission.commands[0]);
+                }
+                transmission.completion.complete(null);
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+                transmission.completion.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new commands and waits until the queued ones are sent and the thread ended
+     * The data line is free afterwards, so another protocol instance can take it over
+     * @author Philipp Schulz
+     */
+    public void close()
+    {
+        synchronized(this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        if(Thread.currentThread() == transmitter)
+        {
+            return;                                                             //called while sending, the thread ends after it
+        }
+        try
+        {
+            transmitter.join();
+        }
+        catch(InterruptedException e)
+        {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of commands waiting in the queue
+     * @author Philipp Schulz
+     * @return Number of pending transmissions
+     */
+    public synchronized int getPending()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of commands that were replaced by a newer one before they were sent
+     * @author Philipp Schulz
+     * @return Number of coalesced commands
+     */
+    public synchronized long getCoalesced()
+    {
+        return coalesced;
+    }
+
+    /**
+     * Single command, batch or reset waiting to be sent, a reset counts as a batch so that it is never replaced
+     * @author Philipp Schulz
+     */
+    private static class Transmission
+    {
+        private final int receiver;
+        private final boolean batch;
+        private final boolean reset;
+        private final String[] commands;
+        private final CompletableFuture<Void> completion;
+
+        private Transmission(int receiver, boolean batch, boolean reset, String... commands)
+        {
+            this.receiver = receiver;
+            this.batch = batch;
+            this.reset = reset;
+            this.commands = commands;
+            this.completion = new CompletableFuture<>();
+        }
+
+        @Override
+        public String toString()
+        {
+            return reset ? RESET_NAME : String.join(";", commands);
+        }
+    }
+}
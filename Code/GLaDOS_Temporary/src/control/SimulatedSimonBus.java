@@ -0,0 +1,586 @@
+package control;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * In-memory SIMON bus with a software microcontroller as peer, used to exercise and time the protocol without the robot
+ * The edges driven by this side are recorded with their time stamps. When the line is released, the peer decodes them like
+ * the microcontroller does, validates receiver and Fletcher-16 checksum and answers a valid frame with the ack "11111111".
+ * The answer is scheduled as edges in the future, so that reading the line follows the real timing of the peer.
+ * Batches of commands separated by ';' are split into single commands.
+ * Chunks sent in framed mode are put together into blocks like the microcontroller does, in a buffer of the same 256 bytes.
+ * Timing jitter moves every edge randomly, bit errors swap the length of single data pulses.
+ * With edge capture the edges of the peer are delivered by a thread at their time, stamped with their exact time like an
+ * interrupt with hardware time stamps would. With a dispatch latency every edge is delivered after a random delay instead and
+ * stamped with the time it arrives, like an event handed to a thread pool, so edges can arrive late and out of order.
+ * @author Philipp Schulz
+ */
+public class SimulatedSimonBus implements SimonBus
+{
+    private final int peerNumber;
+    private final int minimumSignalLength;
+    private final long jitterNanos;
+    private final double bitErrorRate;
+    private final long turnaroundNanos;
+    private final long processingNanos;
+    private final long dispatchNanos;
+    private final Random random;
+
+    private boolean output;
+    private boolean level;
+    private long[] hostTimes;
+    private boolean[] hostLevels;
+    private int hostCount;
+    private long[] peerTimes;
+    private boolean[] peerLevels;
+    private long[] peerDispatch;
+    private boolean[] peerDelivered;
+    private int peerCount;
+    private int peerIndex;
+    private boolean peerLevel;
+    private SimonEdgeCapture capture;
+    private int deliverIndex;
+    private long busyUntil;
+    private final SimonFrame frame;
+    private final SimonFrame ack;
+
+    private long framesReceived;
+    private long framesAccepted;
+    private long checksumErrors;
+    private long addressErrors;
+    private long framesMissed;
+    private long reorderedEdges;
+    private final List<String> receivedCommands;
+    private final List<byte[]> receivedBlocks;
+    private final byte[] block;
+    private int blockLength;
+    private int blockId;
+    private int nextChunk;
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_MICRO = 1_000L;
+    private static final long PEER_OVERHEAD_NANOS = 20_000L;
+    private static final int PREAMBLE_TOGGLES = 8;
+    private static final int ENABLE_LENGTH = 3;
+    private static final int DISABLE_LENGTH = 4;
+    private static final int ZERO_LENGTH = 1;
+    private static final int ONE_LENGTH = 2;
+    private static final int TIMEOUT = 200;
+    private static final int PEER_BLOCK = 256;                                  //MAXIMUM_BLOCK of the microcontroller
+    private static final String BATCH_SEPARATOR = ";";
+    private static final String PEER_THREAD = "SIMON peer";
+    private static final String STATISTICS_OUTPUT = "SIMON peer: %d frames, %d accepted, %d checksum errors, %d address errors, %d missed while busy, %d edges dispatched out of order";
+
+    /**
+     * Creates a simulated bus whose peer has the device number of the body of GLaDOS
+     * @author Philipp Schulz
+     * @param jitterMicros Maximum random shift of every edge in microseconds
+     * @param bitErrorRate Probability between 0 and 1 that the peer reads a data pulse with the wrong length
+     * @param seed Seed of the random numbers, so that runs can be repeated
+     */
+    public SimulatedSimonBus(int jitterMicros, double bitErrorRate, long seed)
+    {
+        this(jitterMicros, bitErrorRate, 0, seed);
+    }
+
+    /**
+     * Creates a simulated bus whose peer has the device number of the body of GLaDOS and whose edges are delivered with a delay
+     * @author Philipp Schulz
+     * @param jitterMicros Maximum random shift of every edge in microseconds
+     * @param bitErrorRate Probability between 0 and 1 that the peer reads a data pulse with the wrong length
+     * @param dispatchMicros Maximum random delay in microseconds until a captured edge is delivered, 0 for exact time stamps
+     * @param seed Seed of the random numbers, so that runs can be repeated
+     */
+    public SimulatedSimonBus(int jitterMicros, double bitErrorRate, int dispatchMicros, long seed)
+    {
+        this(2, 1, jitterMicros, bitErrorRate, 2000, 0, dispatchMicros, seed);
+    }
+
+    /**
+     * Creates a simulated bus
+     * @author Philipp Schulz
+     * @param peerNumber Device number of the simulated microcontroller
+     * @param minimumSignalLength Time in ms of the shortest pulse of the protocol
+     * @param jitterMicros Maximum random shift of every edge in microseconds
+     * @param bitErrorRate Probability between 0 and 1 that the peer reads a data pulse with the wrong length
+     * @param turnaroundMicros Time in microseconds the peer needs between the end of a frame and its ack
+     * @param processingMillis Time in ms the peer is busy executing a command after its ack, frames sent meanwhile are missed
+     * @param dispatchMicros Maximum random delay in microseconds until a captured edge is delivered, 0 for exact time stamps
+     * @param seed Seed of the random numbers, so that runs can be repeated
+     */
+    public SimulatedSimonBus(int peerNumber, int minimumSignalLength, int jitterMicros, double bitErrorRate, int turnaroundMicros, int processingMillis,
+            int dispatchMicros, long seed)
+    {
+        this.peerNumber = peerNumber;
+        this.minimumSignalLength = minimumSignalLength;
+        this.jitterNanos = jitterMicros * NANOS_PER_MICRO;
+        this.bitErrorRate = bitErrorRate;
+        this.turnaroundNanos = turnaroundMicros * NANOS_PER_MICRO;
+        this.processingNanos = processingMillis * NANOS_PER_MILLI;
+        this.dispatchNanos = dispatchMicros * NANOS_PER_MICRO;
+        this.random = new Random(seed);
+        this.hostTimes = new long[INITIAL_CAPACITY];
+        this.hostLevels = new boolean[INITIAL_CAPACITY];
+        this.peerTimes = new long[INITIAL_CAPACITY];
+        this.peerLevels = new boolean[INITIAL_CAPACITY];
+        this.peerDispatch = new long[INITIAL_CAPACITY];
+        this.peerDelivered = new boolean[INITIAL_CAPACITY];
+        this.receivedCommands = new ArrayList<>();
+        this.receivedBlocks = new ArrayList<>();
+        this.block = new byte[PEER_BLOCK];
+        this.blockId = -1;
+        this.frame = new SimonFrame();
+        this.ack = new SimonFrame();
+        this.ack.encodeAck();
+        this.level = true;
+        this.peerLevel = true;
+    }
+
+    @Override
+    public synchronized void open()
+    {
+        output = false;
+        level = true;
+        hostCount = 0;
+        clearPeerSchedule();
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        open();
+        busyUntil = 0;
+    }
+
+    @Override
+    public synchronized void setOutput()
+    {
+        output = true;
+        hostCount = 0;
+        clearPeerSchedule();
+        recordEdge(level);
+    }
+
+    @Override
+    public synchronized void setInput()
+    {
+        if(output)
+        {
+            output = false;
+            decodeHostEdges();
+            hostCount = 0;
+        }
+    }
+
+    @Override
+    public synchronized void high()
+    {
+        drive(true);
+    }
+
+    @Override
+    public synchronized void low()
+    {
+        drive(false);
+    }
+
+    @Override
+    public synchronized boolean captureEdges(SimonEdgeCapture edgeCapture)
+    {
+        if(capture == null)
+        {
+            Thread thread = new Thread(this::deliverEdges, PEER_THREAD);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        capture = edgeCapture;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isHigh()
+    {
+        return readLevel();
+    }
+
+    @Override
+    public synchronized boolean isLow()
+    {
+        return !readLevel();
+    }
+
+    /**
+     * Drives the line and records the edge if the level changes
+     * @author Philipp Schulz
+     * @param newLevel Level the line is driven to
+     */
+    private void drive(boolean newLevel)
+    {
+        if(!output)
+        {
+            return;
+        }
+        if(newLevel != level)
+        {
+            recordEdge(newLevel);
+        }
+        level = newLevel;
+    }
+
+    /**
+     * Records an edge driven by this side with a jittered time stamp, as the peer would sample it
+     * @author Philipp Schulz
+     * @param edgeLevel Level after the edge
+     */
+    private void recordEdge(boolean edgeLevel)
+    {
+        if(hostCount == hostTimes.length)
+        {
+            hostTimes = Arrays.copyOf(hostTimes, hostCount * 2);
+            hostLevels = Arrays.copyOf(hostLevels, hostCount * 2);
+        }
+        long time = jitter(System.nanoTime());
+        if(hostCount > 0)
+        {
+            time = Math.max(time, hostTimes[hostCount - 1] + 1);
+        }
+        hostTimes[hostCount] = time;
+        hostLevels[hostCount] = edgeLevel;
+        hostCount++;
+    }
+
+    /**
+     * Reads the line while it is an input, following the edges scheduled by the peer
+     * @author Philipp Schulz
+     * @return True if the line is high
+     */
+    private boolean readLevel()
+    {
+        if(output)
+        {
+            return level;
+        }
+        long now = System.nanoTime();
+        while(peerIndex < peerCount && peerTimes[peerIndex] <= now)
+        {
+            peerLevel = peerLevels[peerIndex];
+            peerIndex++;
+        }
+        return peerLevel;
+    }
+
+    /**
+     * Decodes the recorded low pulses like the readData function of the microcontroller and answers every valid frame
+     * @author Philipp Schulz
+     */
+    private void decodeHostEdges()
+    {
+        boolean enabled = false;
+        long enableTime = 0;
+        for(int i = 0; i + 1 < hostCount; i++)
+        {
+            if(hostLevels[i] || !hostLevels[i + 1])
+            {
+                continue;
+            }
+            long unit = NANOS_PER_MILLI * minimumSignalLength;
+            int length = (int) ((hostTimes[i + 1] - hostTimes[i] + unit / 2) / unit);
+            if(!enabled)
+            {
+                if(length == ENABLE_LENGTH)
+                {
+                    enabled = true;
+                    enableTime = hostTimes[i];
+                    frame.clear();
+                }
+                continue;
+            }
+            if((length == ZERO_LENGTH || length == ONE_LENGTH) && random.nextDouble() < bitErrorRate)
+            {
+                length = length == ZERO_LENGTH ? ONE_LENGTH : ZERO_LENGTH;
+            }
+            if(length == ZERO_LENGTH || length == ONE_LENGTH)
+            {
+                frame.appendBit(length == ONE_LENGTH);
+            }
+            else if(length == DISABLE_LENGTH || length >= TIMEOUT)
+            {
+                receiveFrame(enableTime, hostTimes[i + 1]);
+                enabled = false;
+            }
+        }
+    }
+
+    /**
+     * Validates the received frame and schedules the ack for a valid one
+     * @author Philipp Schulz
+     * @param enableTime Time the enable signal began
+     * @param endTime Time the disable signal ended
+     */
+    private void receiveFrame(long enableTime, long endTime)
+    {
+        framesReceived++;
+        if(enableTime < busyUntil)
+        {
+            framesMissed++;
+            return;
+        }
+        if(!frame.isValid())
+        {
+            checksumErrors++;
+            return;
+        }
+        if(frame.getReceiver() != peerNumber)
+        {
+            addressErrors++;
+            return;
+        }
+        if(frame.isFramed())
+        {
+            if(!receiveChunk())
+            {
+                checksumErrors++;
+                return;
+            }
+        }
+        else
+        {
+            receivedCommands.addAll(Arrays.asList(frame.getPayload().split(BATCH_SEPARATOR)));
+        }
+        framesAccepted++;
+        long ackEnd = scheduleAck(Math.max(System.nanoTime(), endTime) + turnaroundNanos);
+        notifyAll();
+        busyUntil = ackEnd + processingNanos;
+    }
+
+    /**
+     * Adds a chunk received in framed mode to the current block, like the receiveChunk function of the microcontroller
+     * A repeated chunk whose ack got lost is acknowledged again without being stored twice
+     * @author Philipp Schulz
+     * @return True if the chunk should be acknowledged
+     */
+    private boolean receiveChunk()
+    {
+        if(!frame.isValidChunk())
+        {
+            return false;
+        }
+        int index = frame.getChunkIndex();
+        if(frame.getBlockId() == blockId && index < nextChunk)
+        {
+            return true;
+        }
+        if(index == 0)
+        {
+            blockId = frame.getBlockId();
+            nextChunk = 0;
+            blockLength = 0;
+        }
+        if(frame.getBlockId() != blockId || index != nextChunk || blockLength + frame.getChunkLength() > block.length)
+        {
+            return false;
+        }
+        frame.copyChunk(block, blockLength);
+        blockLength += frame.getChunkLength();
+        nextChunk++;
+        if(nextChunk == frame.getChunkCount())
+        {
+            receivedBlocks.add(Arrays.copyOf(block, blockLength));
+        }
+        return true;
+    }
+
+    /**
+     * Schedules the edges of the ack as sent by the sendDataString function of the microcontroller
+     * @author Philipp Schulz
+     * @param start Time the peer starts to send
+     * @return Time the peer releases the line again
+     */
+    private long scheduleAck(long start)
+    {
+        long unit = NANOS_PER_MILLI * minimumSignalLength;
+        long time = start;
+        time = schedulePeerEdge(time, true, 2 * unit);
+        for(int i = 0; i < PREAMBLE_TOGGLES; i++)
+        {
+            time = schedulePeerEdge(time, false, unit);
+            time = schedulePeerEdge(time, true, unit);
+        }
+        time = schedulePeerEdge(time, false, ENABLE_LENGTH * unit);
+        time = schedulePeerEdge(time, true, unit);
+        for(int i = 0; i < ack.getBitCount(); i++)
+        {
+            time = schedulePeerEdge(time, false, ack.getBit(i) ? ONE_LENGTH * unit : ZERO_LENGTH * unit);
+            time = schedulePeerEdge(time, true, unit);
+        }
+        time = schedulePeerEdge(time, false, DISABLE_LENGTH * unit);
+        return schedulePeerEdge(time, true, 2 * unit);
+    }
+
+    /**
+     * Schedules one edge of the peer with a jittered time stamp, nothing is scheduled if the line already has the level
+     * Like delay() and digitalWrite() of the microcontroller every pulse is slightly longer than its nominal length
+     * @author Philipp Schulz
+     * @param time Nominal time of the edge
+     * @param edgeLevel Level after the edge
+     * @param duration Nominal time until the next edge
+     * @return Nominal time of the next edge
+     */
+    private long schedulePeerEdge(long time, boolean edgeLevel, long duration)
+    {
+        if(edgeLevel == (peerCount > 0 ? peerLevels[peerCount - 1] : peerLevel))
+        {
+            return time + duration + PEER_OVERHEAD_NANOS;
+        }
+        if(peerCount == peerTimes.length)
+        {
+            peerTimes = Arrays.copyOf(peerTimes, peerCount * 2);
+            peerLevels = Arrays.copyOf(peerLevels, peerCount * 2);
+            peerDispatch = Arrays.copyOf(peerDispatch, peerCount * 2);
+            peerDelivered = Arrays.copyOf(peerDelivered, peerCount * 2);
+        }
+        long jittered = jitter(time);
+        if(peerCount > 0)
+        {
+            jittered = Math.max(jittered, peerTimes[peerCount - 1] + 1);
+        }
+        peerTimes[peerCount] = jittered;
+        peerLevels[peerCount] = edgeLevel;
+        peerDispatch[peerCount] = jittered + (long) (random.nextDouble() * dispatchNanos);
+        peerDelivered[peerCount] = false;
+        peerCount++;
+        return time + duration + PEER_OVERHEAD_NANOS;
+    }
+
+    /**
+     * Delivers the scheduled edges of the peer to the capture buffer when they are due, runs on its own thread
+     * The edge whose dispatch is due first is delivered first, which is not always the oldest edge if there is a dispatch latency
+     * @author Philipp Schulz
+     */
+    private synchronized void deliverEdges()
+    {
+        while(true)
+        {
+            try
+            {
+                if(deliverIndex >= peerCount)
+                {
+                    wait();
+                    continue;
+                }
+                int next = deliverIndex;
+                for(int i = deliverIndex + 1; i < peerCount; i++)
+                {
+                    if(!peerDelivered[i] && peerDispatch[i] < peerDispatch[next])
+                    {
+                        next = i;
+                    }
+                }
+                long remaining = peerDispatch[next] - System.nanoTime();
+                if(remaining > 0)
+                {
+                    wait(remaining / NANOS_PER_MILLI, (int) (remaining % NANOS_PER_MILLI));
+                    continue;
+                }
+                if(next != deliverIndex)
+                {
+                    reorderedEdges++;
+                }
+                capture.edge(peerLevels[next], dispatchNanos == 0 ? peerTimes[next] : peerDispatch[next]);
+                peerDelivered[next] = true;
+                while(deliverIndex < peerCount && peerDelivered[deliverIndex])
+                {
+                    deliverIndex++;
+                }
+            }
+            catch(InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all edges the peer has not sent yet, the line is pulled up again
+     * @author Philipp Schulz
+     */
+    private void clearPeerSchedule()
+    {
+        peerCount = 0;
+        peerIndex = 0;
+        peerLevel = true;
+        deliverIndex = 0;
+        notifyAll();
+    }
+
+    /**
+     * Shifts a time stamp by a random amount within the configured jitter
+     * @author Philipp Schulz
+     * @param time Time stamp from System.nanoTime()
+     * @return Shifted time stamp
+     */
+    private long jitter(long time)
+    {
+        if(jitterNanos == 0)
+        {
+            return time;
+        }
+        return time + (long) ((random.nextDouble() * 2 - 1) * jitterNanos);
+    }
+
+    /**
+     * Returns all commands the peer accepted, in the order they were received
+     * @author Philipp Schulz
+     * @return Unmodifiable list of the received commands
+     */
+    public synchronized List<String> getReceivedCommands()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(receivedCommands));
+    }
+
+    /**
+     * Returns all blocks the peer received completely in framed mode, in the order they were received
+     * @author Philipp Schulz
+     * @return Unmodifiable list of the received blocks
+     */
+    public synchronized List<byte[]> getReceivedBlocks()
+    {
+        return Collections.unmodifiableList(new ArrayList<>(receivedBlocks));
+    }
+
+    /**
+     * Returns the number of frames the peer decoded
+     * @author Philipp Schulz
+     * @return Number of received frames
+     */
+    public synchronized long getFramesReceived()
+    {
+        return framesReceived;
+    }
+
+    /**
+     * Returns the number of frames the peer accepted and acknowledged
+     * @author Philipp Schulz
+     * @return Number of accepted frames
+     */
+    public synchronized long getFramesAccepted()
+    {
+        return framesAccepted;
+    }
+
+    /**
+     * Returns the statistics of the peer
+     * @author Philipp Schulz
+     * @return String containing the counters of the peer
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(STATISTICS_OUTPUT, framesReceived, framesAccepted, checksumErrors, addressErrors, framesMissed, reorderedEdges);
+    }
+}
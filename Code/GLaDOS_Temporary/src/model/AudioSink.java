@@ -0,0 +1,84 @@
+package model;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Destination of the mixed PCM data of the playback engine, e.g. the sound card or a file that records what would have been played
+ * The methods follow the SourceDataLine they replace, so that the engine behaves the same on every sink
+ * @author Philipp Schulz
+ */
+public interface AudioSink
+{
+    /**
+     * Opens the sink and starts consuming data
+     * @author Philipp Schulz
+     * @param format Format of the PCM data that is written
+     * @param bufferSize Size of the buffer in bytes
+     * @throws LineUnavailableException When the sink could not be opened
+     */
+    void open(AudioFormat format, int bufferSize) throws LineUnavailableException;
+
+    /**
+     * Writes PCM data, blocks while the buffer is full
+     * @author Philipp Schulz
+     * @param data Array containing the data
+     * @param offset Offset of the data inside of the array
+     * @param length Number of bytes, a multiple of the frame size
+     */
+    void write(byte[] data, int offset, int length);
+
+    /**
+     * Returns how many bytes can be written without blocking
+     * @author Philipp Schulz
+     * @return Free space in the buffer in bytes
+     */
+    int available();
+
+    /**
+     * Returns the size of the buffer
+     * @author Philipp Schulz
+     * @return Buffer size in bytes
+     */
+    int getBufferSize();
+
+    /**
+     * Returns the number of frames that have been played since the sink was opened
+     * @author Philipp Schulz
+     * @return Frame position
+     */
+    long getLongFramePosition();
+
+    /**
+     * Discards the data that is still buffered
+     * @author Philipp Schulz
+     */
+    void flush();
+
+    /**
+     * Blocks until the buffered data has been played
+     * @author Philipp Schulz
+     */
+    void drain();
+
+    /**
+     * Closes the sink, afterwards no data can be written
+     * @author Philipp Schulz
+     */
+    void close();
+
+    /**
+     * Checks whether the sink consumes the data at the speed of the audio, otherwise it consumes it as fast as possible
+     * Priming with silence and underrun detection only make sense in real time
+     * @author Philipp Schulz
+     * @return True if the sink plays in real time
+     */
+    boolean isRealTime();
+
+    /**
+     * Returns a name of the sink for the log
+     * @author Philipp Schulz
+     * @return Name of the sink
+     */
+    String getName();
+}
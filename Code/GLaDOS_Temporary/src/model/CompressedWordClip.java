@@ -0,0 +1,214 @@
+package model;
+
+import java.nio.ByteBuffer;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Word clip that is held as IMA-ADPCM in memory and decoded block by block while it is read
+ * Every block starts with the codec state of each channel, so reading can start at any block without decoding the clip from its start
+ * @author Philipp Schulz
+ */
+public class CompressedWordClip extends WordClip
+{
+    private final byte[] blocks;
+    private final int length;
+    private final int channels;
+    private final int blockSize;
+    private final byte[] blockPcm;
+    private final int[] state;
+    private int cachedBlock;
+
+    private static final int BITS_16 = 16;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int NIBBLE_MASK = 0x0F;
+    private static final int NIBBLE_SHIFT = 4;
+    private static final int BYTES_PER_SAMPLE = 2;
+    private static final int BLOCK_FRAMES = 256;
+    private static final int CHANNEL_HEADER_SIZE = 4;
+
+    /**
+     * Creates a compressed clip from already encoded blocks
+     * @author Philipp Schulz
+     * @param word Word that is spoken in this clip
+     * @param format Format of the decoded PCM data
+     * @param blocks Encoded blocks of the clip
+     * @param length Length of the decoded PCM data in bytes
+     */
+    private CompressedWordClip(String word, AudioFormat format, byte[] blocks, int length)
+    {
+        super(word, format);
+        this.blocks = blocks;
+        this.length = length;
+        this.channels = format.getChannels();
+        this.blockSize = channels * (CHANNEL_HEADER_SIZE + BLOCK_FRAMES / 2);
+        this.blockPcm = new byte[BLOCK_FRAMES * channels * BYTES_PER_SAMPLE];
+        this.state = new int[ImaAdpcm.STATE_SIZE];
+        this.cachedBlock = -1;
+    }
+
+    /**
+     * Checks whether a clip can be compressed, only signed 16 bit little endian PCM is supported
+     * @author Philipp Schulz
+     * @param clip Clip that should be checked
+     * @return True if the clip can be compressed
+     */
+    public static boolean canCompress(WordClip clip)
+    {
+        AudioFormat format = clip.getFormat();
+        return !(clip instanceof CompressedWordClip)
+                && format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED
+                && format.getSampleSizeInBits() == BITS_16
+                && !format.isBigEndian();
+    }
+
+    /**
+     * Encodes a clip into IMA-ADPCM blocks, the last block is padded with silence
+     * @author Philipp Schulz
+     * @param clip Clip that should be compressed, canCompress must be true for it
+     * @return Compressed clip that reads the same PCM data except for the coding loss
+     */
+    public static CompressedWordClip compress(WordClip clip)
+    {
+        AudioFormat format = clip.getFormat();
+        int channels = format.getChannels();
+        int frameSize = format.getFrameSize();
+        int frames = clip.getLength() / frameSize;
+        int blockCount = (frames + BLOCK_FRAMES - 1) / BLOCK_FRAMES;
+        int blockSize = channels * (CHANNEL_HEADER_SIZE + BLOCK_FRAMES / 2);
+        byte[] blocks = new byte[blockCount * blockSize];
+        int[][] states = new int[channels][ImaAdpcm.STATE_SIZE];
+        ByteBuffer data = clip.getData();
+        for(int block = 0; block < blockCount; block++)
+        {
+            int offset = block * blockSize;
+            for(int channel = 0; channel < channels; channel++)
+            {
+                int header = offset + channel * CHANNEL_HEADER_SIZE;
+                blocks[header] = (byte) states[channel][ImaAdpcm.PREDICTOR];
+                blocks[header + 1] = (byte) (states[channel][ImaAdpcm.PREDICTOR] >> BITS_PER_BYTE);
+                blocks[header + 2] = (byte) states[channel][ImaAdpcm.STEP_INDEX];
+            }
+            int nibbles = offset + channels * CHANNEL_HEADER_SIZE;
+            for(int i = 0; i < BLOCK_FRAMES * channels; i++)
+            {
+                int frame = block * BLOCK_FRAMES + i / channels;
+                int sample = 0;
+                if(frame < frames)
+                {
+                    int index = frame * frameSize + (i % channels) * BYTES_PER_SAMPLE;
+                    sample = (short) ((data.get(index) & BYTE_MASK) | (data.get(index + 1) << BITS_PER_BYTE));
+                }
+                int nibble = ImaAdpcm.encode(sample, states[i % channels]);
+                blocks[nibbles + i / 2] |= (byte) (i % 2 == 0 ? nibble : nibble << NIBBLE_SHIFT);
+            }
+        }
+        return new CompressedWordClip(clip.getWord(), format, blocks, frames * frameSize);
+    }
+
+    /**
+     * Returns the length of the decoded PCM data of this clip
+     * @author Philipp Schulz
+     * @return Length of the clip in bytes
+     */
+    @Override
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the number of bytes the encoded clip occupies in memory
+     * @author Philipp Schulz
+     * @return Length of the encoded blocks in bytes
+     */
+    public int getCompressedLength()
+    {
+        return blocks.length;
+    }
+
+    /**
+     * Compressed clips are always held on the heap
+     * @author Philipp Schulz
+     * @return False
+     */
+    @Override
+    public boolean isDirect()
+    {
+        return false;
+    }
+
+    /**
+     * Decodes the whole clip, only meant for tools that process a clip once
+     * @author Philipp Schulz
+     * @return Buffer containing the whole decoded PCM data
+     */
+    @Override
+    public ByteBuffer getData()
+    {
+        byte[] pcm = new byte[length];
+        read(0, pcm, 0, length);
+        return ByteBuffer.wrap(pcm).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes PCM data of this clip into the given array, only the blocks covering the requested range are decoded
+     * @author Philipp Schulz
+     * @param position Position in bytes inside of the decoded clip to start reading from
+     * @param target Array the data should be copied into
+     * @param offset Offset inside of the target array
+     * @param length Maximum number of bytes that should be copied
+     * @return Number of bytes that were copied, -1 if the end of the clip has been reached
+     */
+    @Override
+    public synchronized int read(int position, byte[] target, int offset, int length)
+    {
+        if(position >= this.length)
+        {
+            return -1;
+        }
+        int count = Math.min(length, this.length - position);
+        int copied = 0;
+        while(copied < count)
+        {
+            int block = (position + copied) / blockPcm.length;
+            if(block != cachedBlock)
+            {
+                decodeBlock(block);
+            }
+            int blockOffset = (position + copied) % blockPcm.length;
+            int size = Math.min(count - copied, blockPcm.length - blockOffset);
+            System.arraycopy(blockPcm, blockOffset, target, offset + copied, size);
+            copied += size;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes one block into the block buffer
+     * @author Philipp Schulz
+     * @param block Index of the block
+     */
+    private void decodeBlock(int block)
+    {
+        int offset = block * blockSize;
+        int nibbles = offset + channels * CHANNEL_HEADER_SIZE;
+        for(int channel = 0; channel < channels; channel++)
+        {
+            int header = offset + channel * CHANNEL_HEADER_SIZE;
+            int output = channel * BYTES_PER_SAMPLE;
+            state[ImaAdpcm.PREDICTOR] = (short) ((blocks[header] & BYTE_MASK) | (blocks[header + 1] << BITS_PER_BYTE));
+            state[ImaAdpcm.STEP_INDEX] = blocks[header + 2];
+            for(int i = channel; i < BLOCK_FRAMES * channels; i += channels)
+            {
+                int code = blocks[nibbles + i / 2];
+                int nibble = (i % 2 == 0 ? code : code >> NIBBLE_SHIFT) & NIBBLE_MASK;
+                int sample = ImaAdpcm.decode(nibble, state);
+                blockPcm[output] = (byte) sample;
+                blockPcm[output + 1] = (byte) (sample >> BITS_PER_BYTE);
+                output += channels * BYTES_PER_SAMPLE;
+            }
+        }
+        cachedBlock = block;
+    }
+}
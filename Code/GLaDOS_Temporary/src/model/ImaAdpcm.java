@@ -0,0 +1,108 @@
+package model;
+
+/**
+ * IMA-ADPCM codec that stores 16 bit samples in 4 bits, cheap enough to be decoded in pure Java while playing
+ * The state of every channel is kept in a small int array: predicted sample and index into the step table
+ * @author Philipp Schulz
+ */
+public class ImaAdpcm
+{
+    public static final int STATE_SIZE = 2;
+    public static final int PREDICTOR = 0;
+    public static final int STEP_INDEX = 1;
+
+    private static final int[] INDEX_TABLE =
+    {
+        -1, -1, -1, -1, 2, 4, 6, 8,
+        -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE =
+    {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+        19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+        130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+        876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+        5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private static final int SIGN = 8;
+    private static final int BIT_4 = 4;
+    private static final int BIT_2 = 2;
+    private static final int BIT_1 = 1;
+
+    private ImaAdpcm()
+    {
+    }
+
+    /**
+     * Encodes one sample and advances the state of its channel
+     * @author Philipp Schulz
+     * @param sample Signed 16 bit sample
+     * @param state State of the channel, updated to the decoded value of the returned nibble
+     * @return 4 bit code of the sample
+     */
+    public static int encode(int sample, int[] state)
+    {
+        int step = STEP_TABLE[state[STEP_INDEX]];
+        int difference = sample - state[PREDICTOR];
+        int nibble = 0;
+        if(difference < 0)
+        {
+            nibble = SIGN;
+            difference = -difference;
+        }
+        if(difference >= step)
+        {
+            nibble |= BIT_4;
+            difference -= step;
+        }
+        step >>= 1;
+        if(difference >= step)
+        {
+            nibble |= BIT_2;
+            difference -= step;
+        }
+        step >>= 1;
+        if(difference >= step)
+        {
+            nibble |= BIT_1;
+        }
+        decode(nibble, state);
+        return nibble;
+    }
+
+    /**
+     * Decodes one 4 bit code and advances the state of its channel
+     * @author Philipp Schulz
+     * @param nibble 4 bit code of the sample
+     * @param state State of the channel
+     * @return Signed 16 bit sample
+     */
+    public static int decode(int nibble, int[] state)
+    {
+        int step = STEP_TABLE[state[STEP_INDEX]];
+        int difference = step >> 3;
+        if((nibble & BIT_4) != 0)
+        {
+            difference += step;
+        }
+        if((nibble & BIT_2) != 0)
+        {
+            difference += step >> 1;
+        }
+        if((nibble & BIT_1) != 0)
+        {
+            difference += step >> 2;
+        }
+        int predictor = state[PREDICTOR] + ((nibble & SIGN) != 0 ? -difference : difference);
+        predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+        state[PREDICTOR] = predictor;
+        state[STEP_INDEX] = Math.max(0, Math.min(STEP_TABLE.length - 1, state[STEP_INDEX] + INDEX_TABLE[nibble]));
+        return predictor;
+    }
+}
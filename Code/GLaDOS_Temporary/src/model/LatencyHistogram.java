@@ -0,0 +1,129 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead histogram of durations with power of two buckets in microseconds, safe to record from any thread
+ * @author Philipp Schulz
+ */
+public class LatencyHistogram
+{
+    private final String name;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong maximum;
+
+    private static final int BUCKET_COUNT = 32;
+    private static final long NANOS_PER_MICRO = 1000;
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final double MEDIAN = 0.5;
+    private static final double PERCENTILE_90 = 0.9;
+    private static final double PERCENTILE_99 = 0.99;
+    private static final String OUTPUT = "%s: n=%d mean=%.1fms p50<%.1fms p90<%.1fms p99<%.1fms max=%.1fms";
+
+    /**
+     * Creates an empty histogram
+     * @author Philipp Schulz
+     * @param name Name of the histogram used in its output
+     */
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.maximum = new AtomicLong();
+    }
+
+    /**
+     * Records a single duration
+     * @author Philipp Schulz
+     * @param nanos Duration in nanoseconds, negative durations are recorded as 0
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.max(0, nanos / NANOS_PER_MICRO);
+        int bucket = Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long previous;
+        while(micros > (previous = maximum.get()) && !maximum.compareAndSet(previous, micros))
+        {
+        }
+    }
+
+    /**
+     * Returns the number of recorded durations
+     * @author Philipp Schulz
+     * @return Number of recorded durations
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given percentile
+     * @author Philipp Schulz
+     * @param percentile Percentile between 0 and 1
+     * @return Upper bound of the percentile in microseconds, 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = count.get();
+        long threshold = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+        {
+            seen += buckets.get(bucket);
+            if(seen >= threshold && seen > 0)
+            {
+                return 1L << bucket;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the longest recorded duration
+     * @author Philipp Schulz
+     * @return Maximum in microseconds
+     */
+    public long getMaximum()
+    {
+        return maximum.get();
+    }
+
+    /**
+     * Removes all recorded durations
+     * @author Philipp Schulz
+     */
+    public void reset()
+    {
+        for(int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+        {
+            buckets.set(bucket, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        maximum.set(0);
+    }
+
+    /**
+     * Returns a one line summary of the histogram
+     * @author Philipp Schulz
+     * @return Name, count, mean, percentiles and maximum of the histogram in milliseconds
+     */
+    @Override
+    public String toString()
+    {
+        long total = count.get();
+        double mean = total == 0 ? 0 : sum.get() / (double) total / MICROS_PER_MILLI;
+        return String.format(OUTPUT, name, total, mean, getPercentile(MEDIAN) / MICROS_PER_MILLI,
+                getPercentile(PERCENTILE_90) / MICROS_PER_MILLI, getPercentile(PERCENTILE_99) / MICROS_PER_MILLI,
+                maximum.get() / MICROS_PER_MILLI);
+    }
+}
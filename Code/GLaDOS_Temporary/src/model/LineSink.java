@@ -0,0 +1,107 @@
+package model;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Audio sink that plays the data on a SourceDataLine of the sound card
+ * @author Philipp Schulz
+ */
+public class LineSink implements AudioSink
+{
+    private final Mixer mixer;
+    private SourceDataLine line;
+
+    private final String DEFAULT_MIXER = "default mixer";
+
+    /**
+     * Creates a sink for the given mixer, the line is opened with open
+     * @author Philipp Schulz
+     * @param mixer Mixer the line should be opened on, null for the default mixer of the system
+     */
+    public LineSink(Mixer mixer)
+    {
+        this.mixer = mixer;
+    }
+
+    /**
+     * Opens and starts the line on the mixer
+     * @author Philipp Schulz
+     * @param format Format of the PCM data that is written
+     * @param bufferSize Size of the line buffer in bytes
+     * @throws LineUnavailableException When the line could not be opened
+     */
+    @Override
+    public void open(AudioFormat format, int bufferSize) throws LineUnavailableException
+    {
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        if(mixer != null)
+        {
+            line = (SourceDataLine) mixer.getLine(info);
+        }
+        else
+        {
+            line = (SourceDataLine) AudioSystem.getLine(info);
+        }
+        line.open(format, bufferSize);
+        line.start();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length)
+    {
+        line.write(data, offset, length);
+    }
+
+    @Override
+    public int available()
+    {
+        return line.available();
+    }
+
+    @Override
+    public int getBufferSize()
+    {
+        return line.getBufferSize();
+    }
+
+    @Override
+    public long getLongFramePosition()
+    {
+        return line.getLongFramePosition();
+    }
+
+    @Override
+    public void flush()
+    {
+        line.flush();
+    }
+
+    @Override
+    public void drain()
+    {
+        line.drain();
+    }
+
+    @Override
+    public void close()
+    {
+        line.close();
+    }
+
+    @Override
+    public boolean isRealTime()
+    {
+        return true;
+    }
+
+    @Override
+    public String getName()
+    {
+        return mixer != null ? mixer.getMixerInfo().getName() : DEFAULT_MIXER;
+    }
+}
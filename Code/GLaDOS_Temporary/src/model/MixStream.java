@@ -0,0 +1,262 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * One stream of clips that is summed into the output line by the playback engine, e.g. a spoken phrase or a sound effect
+ * The clips are read one after another without gaps, the gain can be changed while the stream is playing
+ * The gap the listener hears in front of a word is the silence between the words, taken from the byte positions of the clips,
+ * plus the silence of buffer underruns since the word before started, so a dropout inside a word counts into the gap after it.
+ * @author Philipp Schulz
+ */
+public class MixStream
+{
+    private final List<WordClip> clips;
+    private final long createdTime;
+    private final PlaybackStatistics statistics;
+    private final CompletableFuture<Void> played;
+    private volatile float gain;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private int clipIndex;
+    private int position;
+    private long firstAudioTime;
+    private long endFrame;
+    private int boundary;
+    private boolean wordStarted;
+    private long gapLength;
+    private long underrunSilence;
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * Creates a stream that is not recorded in the playback statistics
+     * @author Philipp Schulz
+     * @param clips Clips of the stream in the order they are played
+     * @param gain Gain the samples of the stream are multiplied with, 1 keeps them unchanged
+     */
+    public MixStream(List<WordClip> clips, float gain)
+    {
+        this(clips, gain, System.nanoTime(), null);
+    }
+
+    /**
+     * Creates a stream whose latencies are recorded
+     * @author Philipp Schulz
+     * @param clips Clips of the stream in the order they are played
+     * @param gain Gain the samples of the stream are multiplied with, 1 keeps them unchanged
+     * @param createdTime Time the stream was requested, from System.nanoTime()
+     * @param statistics Statistics the time to the first audio and the gaps between words are recorded into, null for none
+     */
+    public MixStream(List<WordClip> clips, float gain, long createdTime, PlaybackStatistics statistics)
+    {
+        this.clips = clips;
+        this.gain = gain;
+        this.createdTime = createdTime;
+        this.statistics = statistics;
+        this.played = new CompletableFuture<>();
+    }
+
+    /**
+     * Reads the next PCM data of the stream, continuing with the next clip at the end of a clip
+     * Only called by the mixing thread of the playback engine
+     * @author Philipp Schulz
+     * @param target Array the data should be copied into
+     * @param offset Offset inside of the target array
+     * @param length Maximum number of bytes that should be copied
+     * @return Number of bytes that were copied, -1 if the stream has ended
+     */
+    int read(byte[] target, int offset, int length)
+    {
+        while(clipIndex < clips.size())
+        {
+            WordClip clip = clips.get(clipIndex);
+            int count = clip.read(position, target, offset, length);
+            if(count > 0)
+            {
+                if(position == 0)
+                {
+                    startClip(clip);
+                }
+                while(boundary < clip.getWordBoundaries() && clip.getWordStart(boundary) < position + count)
+                {
+                    startWord(clip, clip.getGapLength(boundary++));            //a word inside of a rendered phrase is read
+                }
+                if(firstAudioTime == 0)
+                {
+                    firstAudioTime = System.nanoTime();
+                    if(statistics != null)
+                    {
+                        statistics.getTimeToFirstAudio().record(firstAudioTime - createdTime);
+                    }
+                }
+                position += count;
+                return count;
+            }
+            clipIndex++;
+            position = 0;
+            boundary = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the length of a silence clip to the gap or starts the first word of a clip
+     * @author Philipp Schulz
+     * @param clip Clip whose first data was read
+     */
+    private void startClip(WordClip clip)
+    {
+        if(clip.isSilence())
+        {
+            gapLength += clip.getLength();
+            return;
+        }
+        startWord(clip, 0);
+    }
+
+    /**
+     * Records the gap in front of a word that starts, the first word of the stream has no gap
+     * @author Philipp Schulz
+     * @param clip Clip the word is read from
+     * @param silence Bytes of silence in front of the word inside of the clip
+     */
+    private void startWord(WordClip clip, int silence)
+    {
+        if(wordStarted && statistics != null)
+        {
+            AudioFormat format = clip.getFormat();
+            long frames = (gapLength + silence) / format.getFrameSize();
+            statistics.getWordGap().record((long) (frames * NANOS_PER_SECOND / format.getFrameRate()) + underrunSilence);
+        }
+        wordStarted = true;
+        gapLength = 0;
+        underrunSilence = 0;
+    }
+
+    /**
+     * Adds the silence of a buffer underrun that was heard while the stream was playing
+     * Only called by the mixing thread of the playback engine
+     * @author Philipp Schulz
+     * @param nanos Time the output line played nothing before the next block of the stream
+     */
+    void addUnderrunSilence(long nanos)
+    {
+        if(wordStarted)
+        {
+            underrunSilence += nanos;
+        }
+    }
+
+    /**
+     * Marks the stream as completely written into the output line
+     * @author Philipp Schulz
+     * @param endFrame Frame position of the output line at which the last sample of the stream is played
+     */
+    void finish(long endFrame)
+    {
+        this.endFrame = endFrame;
+        this.finished = true;
+    }
+
+    /**
+     * Completes the future of the stream, called by the mixing thread once the output line has played the end frame
+     * @author Philipp Schulz
+     */
+    void complete()
+    {
+        played.complete(null);
+    }
+
+    /**
+     * Returns the clips of the stream
+     * @author Philipp Schulz
+     * @return Clips in the order they are played
+     */
+    List<WordClip> getClips()
+    {
+        return clips;
+    }
+
+    /**
+     * Returns the gain of the stream
+     * @author Philipp Schulz
+     * @return Gain the samples are multiplied with
+     */
+    public float getGain()
+    {
+        return gain;
+    }
+
+    /**
+     * Changes the gain of the stream, takes effect with the next mixed block
+     * @author Philipp Schulz
+     * @param gain Gain the samples are multiplied with, 1 keeps them unchanged
+     */
+    public void setGain(float gain)
+    {
+        this.gain = gain;
+    }
+
+    /**
+     * Returns the future that completes once the output line has played the last sample of the stream
+     * A cancelled stream completes as soon as it has been removed from the mix
+     * @author Philipp Schulz
+     * @return Future that completes when the stream has been played
+     */
+    public CompletableFuture<Void> getPlayed()
+    {
+        return played;
+    }
+
+    /**
+     * Stops the stream, it is removed from the mix with the next block
+     * @author Philipp Schulz
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether the stream was cancelled
+     * @author Philipp Schulz
+     * @return True if the stream was cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Checks whether all samples of the stream have been written into the output line
+     * @author Philipp Schulz
+     * @return True if the stream has been written completely
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Returns the frame position of the output line at which the last sample of the stream is played
+     * @author Philipp Schulz
+     * @return End frame, only valid once the stream is finished
+     */
+    long getEndFrame()
+    {
+        return endFrame;
+    }
+
+    /**
+     * Returns the time the first sample of the stream was mixed
+     * @author Philipp Schulz
+     * @return Time from System.nanoTime(), 0 if nothing has been mixed yet
+     */
+    long getFirstAudioTime()
+    {
+        return firstAudioTime;
+    }
+}
@@ -0,0 +1,229 @@
+package model;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Audio sink without sound card that consumes the data either at the speed of the audio or as fast as possible
+ * In real time it behaves like a line with a buffer: written data is queued and played along a clock, flush discards the queued data
+ * Used to measure and test the speech output on machines without audio hardware
+ * @author Philipp Schulz
+ */
+public class NullSink implements AudioSink
+{
+    private final boolean realTime;
+    private AudioFormat format;
+    private int frameSize;
+    private byte[] ring;
+    private int ringStart;
+    private int queued;
+    private long position;
+    private long playedBytes;
+    private long lastTime;
+    private double pendingFrames;
+
+    private final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private final int WAIT_TIME = 1;
+    private final String NAME = "null sink";
+    private final String REAL_TIME = " (real time)";
+    private final String FAST = " (as fast as possible)";
+
+    /**
+     * Creates a sink that discards the data
+     * @author Philipp Schulz
+     * @param realTime Whether the data is consumed at the speed of the audio instead of as fast as possible
+     */
+    public NullSink(boolean realTime)
+    {
+        this.realTime = realTime;
+    }
+
+    /**
+     * Opens the sink, the clock of a real time sink starts now
+     * @author Philipp Schulz
+     * @param format Format of the PCM data that is written
+     * @param bufferSize Size of the buffer in bytes
+     */
+    @Override
+    public synchronized void open(AudioFormat format, int bufferSize)
+    {
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.ring = new byte[bufferSize / frameSize * frameSize];
+        this.ringStart = 0;
+        this.queued = 0;
+        this.position = 0;
+        this.playedBytes = 0;
+        this.lastTime = System.nanoTime();
+        this.pendingFrames = 0;
+    }
+
+    /**
+     * Consumes the data, in real time the data is queued and the call blocks while the buffer is full
+     * @author Philipp Schulz
+     * @param data Array containing the data
+     * @param offset Offset of the data inside of the array
+     * @param length Number of bytes, a multiple of the frame size
+     */
+    @Override
+    public synchronized void write(byte[] data, int offset, int length)
+    {
+        if(!realTime)
+        {
+            play(data, offset, length);
+            position += length / frameSize;
+            return;
+        }
+        int written = 0;
+        while(written < length)
+        {
+            advance();
+            int free = ring.length - queued;
+            if(free == 0)
+            {
+                try
+                {
+                    wait(WAIT_TIME);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            int count = Math.min(free, length - written);
+            int end = (ringStart + queued) % ring.length;
+            int first = Math.min(count, ring.length - end);
+            System.arraycopy(data, offset + written, ring, end, first);
+            System.arraycopy(data, offset + written + first, ring, 0, count - first);
+            queued += count;
+            written += count;
+        }
+    }
+
+    /**
+     * Plays the queued data that is due according to the clock, the clock stops while nothing is queued
+     * @author Philipp Schulz
+     */
+    private void advance()
+    {
+        long now = System.nanoTime();
+        pendingFrames += (now - lastTime) * (double) format.getFrameRate() / NANOS_PER_SECOND;
+        lastTime = now;
+        int frames = (int) Math.min(pendingFrames, queued / frameSize);
+        pendingFrames -= frames;
+        if(queued < frameSize)
+        {
+            pendingFrames = 0;
+        }
+        int count = frames * frameSize;
+        int first = Math.min(count, ring.length - ringStart);
+        play(ring, ringStart, first);
+        play(ring, 0, count - first);
+        ringStart = (ringStart + count) % ring.length;
+        queued -= count;
+        position += frames;
+    }
+
+    /**
+     * Called for every part of the data at the moment it is played
+     * @author Philipp Schulz
+     * @param data Array containing the played data
+     * @param offset Offset of the data inside of the array
+     * @param length Number of bytes
+     */
+    protected void play(byte[] data, int offset, int length)
+    {
+        playedBytes += length;
+    }
+
+    @Override
+    public synchronized int available()
+    {
+        if(!realTime)
+        {
+            return ring.length;
+        }
+        advance();
+        return ring.length - queued;
+    }
+
+    @Override
+    public synchronized int getBufferSize()
+    {
+        return ring.length;
+    }
+
+    @Override
+    public synchronized long getLongFramePosition()
+    {
+        if(realTime)
+        {
+            advance();
+        }
+        return position;
+    }
+
+    @Override
+    public synchronized void flush()
+    {
+        queued = 0;
+        ringStart = 0;
+    }
+
+    @Override
+    public synchronized void drain()
+    {
+        while(realTime && queued > 0)
+        {
+            try
+            {
+                wait(WAIT_TIME);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            advance();
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        flush();
+    }
+
+    @Override
+    public boolean isRealTime()
+    {
+        return realTime;
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME + (realTime ? REAL_TIME : FAST);
+    }
+
+    /**
+     * Returns the format the sink was opened with
+     * @author Philipp Schulz
+     * @return Format of the played data
+     */
+    public synchronized AudioFormat getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Returns the number of bytes that have been played, without the data discarded by flush
+     * @author Philipp Schulz
+     * @return Played bytes since the sink was opened
+     */
+    public synchronized long getPlayedBytes()
+    {
+        return playedBytes;
+    }
+}
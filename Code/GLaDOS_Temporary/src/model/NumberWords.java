@@ -0,0 +1,294 @@
+package model;
+
+/**
+ * Converts numbers into English words without creating garbage, the words are written into a WordSink
+ * Supports numbers up to 999 billion with up to 3 decimal places, larger numbers are read digit by digit
+ * @author Philipp Schulz
+ */
+public class NumberWords
+{
+    private static final String MINUS = "minus";
+    private static final String DOT_WORD = "point";
+    private static final String HUNDRED = "hundred";
+    private static final String[] SINGLE_DIGITS = {"zero","one","two","three","four","five","six","seven",
+        "eight","nine"};
+    private static final String[] UNDER_TWENTY = {"","one","two","three","four","five","six","seven",
+        "eight","nine","ten","eleven","twelve","thirteen","fourteen","fifteen",
+        "sixteen","seventeen","eighteen","nineteen"};
+    private static final String[] TEENS_DIGITS = {"","","twenty","thirty","fourty","fifty","sixty","seventy",
+        "eighty","ninety"};
+    private static final String[] TEN_STEPS = {"","","thousand","million","billion"};
+    private static final long[] TRIPLET_WEIGHTS = {1L, 1_000L, 1_000_000L, 1_000_000_000L};
+
+    private static final long MAXIMUM_NUMBER = 999_999_999_999L;
+    private static final int MAXIMUM_INTEGER_DIGITS = 18;
+    private static final int DECIMAL_DIGITS = 3;
+    private static final int DECIMAL_FACTOR = 1000;
+    private static final double DECIMAL_EPSILON = 1e-6;
+    private static final int TRIPLET = 1000;
+    private static final int TWENTY = 20;
+    private static final int TEN = 10;
+    private static final int HUNDRED_VALUE = 100;
+    private static final char DOT = '.';
+    private static final char MINUS_SIGN = '-';
+
+    private NumberWords()
+    {
+    }
+
+    /**
+     * Writes the words of a number given as text, e.g. "-12.5", into the sink
+     * Decimal places after the third one are cut off, trailing zeros of the decimal places are not spoken
+     * @author Philipp Schulz
+     * @param number Text of the number, an optional minus followed by digits and optionally a dot and more digits
+     * @param sink Sink the words are written into
+     * @return False if the text is not a number, in that case nothing is written
+     */
+    public static boolean appendNumber(CharSequence number, WordSink sink)
+    {
+        return appendNumber(number, 0, number.length(), sink);
+    }
+
+    /**
+     * Writes the words of a number given as part of a text into the sink
+     * @author Philipp Schulz
+     * @param text Text containing the number
+     * @param begin Index of the first character of the number
+     * @param end Index after the last character of the number
+     * @param sink Sink the words are written into
+     * @return False if the given part of the text is not a number, in that case nothing is written
+     */
+    public static boolean appendNumber(CharSequence text, int begin, int end, WordSink sink)
+    {
+        int index = begin;
+        boolean negative = false;
+        if(index < end && text.charAt(index) == MINUS_SIGN)
+        {
+            negative = true;
+            index++;
+        }
+        long integer = 0;
+        int integerDigits = 0;
+        while(index < end && isDigit(text.charAt(index)))
+        {
+            if(integerDigits == MAXIMUM_INTEGER_DIGITS)
+            {
+                return false;
+            }
+            integer = integer * TEN + (text.charAt(index) - '0');
+            integerDigits++;
+            index++;
+        }
+        int fraction = 0;
+        int fractionDigits = 0;
+        int allFractionDigits = 0;
+        if(index < end && text.charAt(index) == DOT)
+        {
+            index++;
+            while(index < end && isDigit(text.charAt(index)))
+            {
+                if(fractionDigits < DECIMAL_DIGITS)
+                {
+                    fraction = fraction * TEN + (text.charAt(index) - '0');
+                    fractionDigits++;
+                }
+                allFractionDigits++;
+                index++;
+            }
+            if(allFractionDigits == 0)
+            {
+                return false;
+            }
+        }
+        if(index != end || (integerDigits == 0 && allFractionDigits == 0))
+        {
+            return false;
+        }
+        appendNumber(negative, integer, fraction, fractionDigits, sink);
+        return true;
+    }
+
+    /**
+     * Writes the words of an integer into the sink
+     * @author Philipp Schulz
+     * @param number Number that should be converted
+     * @param sink Sink the words are written into
+     */
+    public static void appendNumber(long number, WordSink sink)
+    {
+        if(number == Long.MIN_VALUE)
+        {
+            sink.accept(MINUS);
+            appendDigits(Long.MAX_VALUE, sink);
+            return;
+        }
+        appendNumber(number < 0, Math.abs(number), 0, 0, sink);
+    }
+
+    /**
+     * Writes the words of a decimal number into the sink, e.g. a sensor value
+     * @author Philipp Schulz
+     * @param number Number that should be converted
+     * @param sink Sink the words are written into
+     */
+    public static void appendNumber(double number, WordSink sink)
+    {
+        double absolute = Math.abs(number);
+        if(Double.isNaN(number) || absolute > MAXIMUM_NUMBER)
+        {
+            appendNumber((long) number, sink);
+            return;
+        }
+        long integer = (long) absolute;
+        int fraction = (int) Math.min(DECIMAL_FACTOR - 1, Math.floor((absolute - integer) * DECIMAL_FACTOR + DECIMAL_EPSILON));
+        appendNumber(number < 0, integer, fraction, DECIMAL_DIGITS, sink);
+    }
+
+    /**
+     * Writes the words of a number split into its parts into the sink
+     * @author Philipp Schulz
+     * @param negative Whether the number is negative
+     * @param integer Absolute value of the integer part
+     * @param fraction Decimal places as an integer, e.g. 50 for ".050"
+     * @param fractionDigits Number of decimal places contained in fraction
+     * @param sink Sink the words are written into
+     */
+    public static void appendNumber(boolean negative, long integer, int fraction, int fractionDigits, WordSink sink)
+    {
+        while(fractionDigits > 0 && fraction % TEN == 0)
+        {
+            fraction /= TEN;
+            fractionDigits--;
+        }
+        if(integer == 0 && fractionDigits == 0)
+        {
+            sink.accept(SINGLE_DIGITS[0]);
+            return;
+        }
+        if(negative)
+        {
+            sink.accept(MINUS);
+        }
+        if(integer == 0)
+        {
+            sink.accept(SINGLE_DIGITS[0]);
+        }
+        else if(integer > MAXIMUM_NUMBER)
+        {
+            appendDigits(integer, sink);
+        }
+        else
+        {
+            for(int weight = TRIPLET_WEIGHTS.length - 1; weight >= 0; weight--)
+            {
+                appendTriplet((int) (integer / TRIPLET_WEIGHTS[weight] % TRIPLET), weight + 1, sink);
+            }
+        }
+        if(fractionDigits > 0)
+        {
+            sink.accept(DOT_WORD);
+            int divisor = 1;
+            for(int i = 1; i < fractionDigits; i++)
+            {
+                divisor *= TEN;
+            }
+            for(; divisor > 0; divisor /= TEN)
+            {
+                sink.accept(SINGLE_DIGITS[fraction / divisor % TEN]);
+            }
+        }
+    }
+
+    /**
+     * Writes every digit of a text as a single word into the sink, a dot is spoken as "point"
+     * @author Philipp Schulz
+     * @param number Text containing the digits
+     * @param sink Sink the words are written into
+     */
+    public static void appendSingleDigits(CharSequence number, WordSink sink)
+    {
+        for(int i = 0; i < number.length(); i++)
+        {
+            char digit = number.charAt(i);
+            if(digit == DOT)
+            {
+                sink.accept(DOT_WORD);
+            }
+            else
+            {
+                sink.accept(SINGLE_DIGITS[digit - '0']);
+            }
+        }
+    }
+
+    /**
+     * Writes the words of a triplet of a number and its weight into the sink
+     * @author Philipp Schulz
+     * @param triplet Value of the triplet between 0 and 999
+     * @param weight Weight of the triplet, 1 for ones, 2 for thousands, 3 for millions and 4 for billions
+     * @param sink Sink the words are written into
+     */
+    private static void appendTriplet(int triplet, int weight, WordSink sink)
+    {
+        if(triplet == 0)
+        {
+            return;
+        }
+        int hundreds = triplet / HUNDRED_VALUE;
+        int rest = triplet % HUNDRED_VALUE;
+        if(hundreds != 0)
+        {
+            sink.accept(SINGLE_DIGITS[hundreds]);
+            sink.accept(HUNDRED);
+        }
+        if(rest < TWENTY)
+        {
+            if(rest != 0)
+            {
+                sink.accept(UNDER_TWENTY[rest]);
+            }
+        }
+        else
+        {
+            sink.accept(TEENS_DIGITS[rest / TEN]);
+            if(rest % TEN != 0)
+            {
+                sink.accept(UNDER_TWENTY[rest % TEN]);
+            }
+        }
+        if(weight > 1)
+        {
+            sink.accept(TEN_STEPS[weight]);
+        }
+    }
+
+    /**
+     * Writes all digits of a positive number as single words into the sink
+     * @author Philipp Schulz
+     * @param number Number whose digits should be written
+     * @param sink Sink the words are written into
+     */
+    private static void appendDigits(long number, WordSink sink)
+    {
+        long divisor = 1;
+        while(number / divisor >= TEN)
+        {
+            divisor *= TEN;
+        }
+        for(; divisor > 0; divisor /= TEN)
+        {
+            sink.accept(SINGLE_DIGITS[(int) (number / divisor % TEN)]);
+        }
+    }
+
+    /**
+     * Checks whether the given character is a decimal digit
+     * @author Philipp Schulz
+     * @param character Character that should be checked
+     * @return True if the character is between '0' and '9'
+     */
+    private static boolean isDigit(char character)
+    {
+        return character >= '0' && character <= '9';
+    }
+}
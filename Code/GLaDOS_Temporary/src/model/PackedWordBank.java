@@ -0,0 +1,223 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Container file holding every clip of the word bank, written at build time and memory mapped at runtime
+ * Layout: magic, version, word count, one index entry per word (name, format, offset, length), then the raw PCM data
+ * @author Philipp Schulz
+ */
+public class PackedWordBank
+{
+    private static final int MAGIC = 0x474C5742;
+    private static final int VERSION = 1;
+    private static final int ALIGNMENT = 4;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 24;
+    private static final int NAME_LENGTH_SIZE = 2;
+    private static final int NAME_LENGTH_MASK = 0xFFFF;
+    private static final byte SIGNED = 0;
+    private static final byte UNSIGNED = 1;
+    private static final String ERROR_FORMAT = "not a packed word bank: ";
+    private static final String ERROR_ENTRY = "entry %d of the packed word bank %s is damaged";
+    private static final String ERROR_ENCODING = "word bank only supports PCM clips: ";
+    private static final String USAGE = "usage: PackedWordBank <word directory> <output file>";
+    private static final String PACK_OUTPUT = "Sound: packed %d words into %s, %d bytes%n";
+
+    private PackedWordBank()
+    {
+    }
+
+    /**
+     * Writes all clips of the given word bank into one container file
+     * @author Philipp Schulz
+     * @param wordBank Word bank whose clips should be written
+     * @param file File the container should be written to
+     * @return Size of the written file in bytes
+     * @throws IOException When the file could not be written
+     */
+    public static long write(WordBank wordBank, File file) throws IOException
+    {
+        List<WordClip> clips = new ArrayList<>();
+        int indexSize = HEADER_SIZE;
+        for(int id = 0; id < wordBank.getWordCount(); id++)
+        {
+            WordClip clip = wordBank.getWord(id);
+            checkEncoding(clip);
+            clips.add(clip);
+            indexSize += ENTRY_SIZE + clip.getWord().getBytes(StandardCharsets.UTF_8).length;
+        }
+        int offset = align(indexSize);
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(clips.size());
+            for(WordClip clip : clips)
+            {
+                byte[] name = clip.getWord().getBytes(StandardCharsets.UTF_8);
+                AudioFormat format = clip.getFormat();
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeFloat(format.getSampleRate());
+                out.writeInt(format.getSampleSizeInBits());
+                out.writeInt(format.getChannels());
+                out.writeByte(format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED ? SIGNED : UNSIGNED);
+                out.writeByte(format.isBigEndian() ? 1 : 0);
+                out.writeInt(offset);
+                out.writeInt(clip.getLength());
+                offset = align(offset + clip.getLength());
+            }
+            pad(out, indexSize);
+            for(WordClip clip : clips)
+            {
+                byte[] pcm = new byte[clip.getLength()];
+                clip.read(0, pcm, 0, pcm.length);
+                out.write(pcm);
+                pad(out, pcm.length);
+            }
+            return out.size();
+        }
+    }
+
+    /**
+     * Memory maps a container file, the clips are slices of the mapped buffer and are not copied onto the heap
+     * The header and every index entry are checked against the size of the file, so that a truncated or damaged file is reported
+     * as an IOException and the clips are decoded from the directory instead
+     * @author Philipp Schulz
+     * @param file Container file that should be mapped
+     * @return Map of all words and their clips
+     * @throws IOException When the file could not be mapped, is not a packed word bank or is damaged
+     */
+    public static Map<String, WordClip> map(File file) throws IOException
+    {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+        {
+            throw new IOException(ERROR_FORMAT + file);
+        }
+        int count = buffer.getInt();
+        if(count < 0 || (long) count * ENTRY_SIZE > buffer.remaining())
+        {
+            throw new IOException(ERROR_FORMAT + file);
+        }
+        Map<String, WordClip> words = new HashMap<>();
+        for(int i = 0; i < count; i++)
+        {
+            if(buffer.remaining() < ENTRY_SIZE)
+            {
+                throw new IOException(String.format(ERROR_ENTRY, i, file));
+            }
+            int nameLength = buffer.getShort() & NAME_LENGTH_MASK;
+            if(buffer.remaining() < nameLength + ENTRY_SIZE - NAME_LENGTH_SIZE)
+            {
+                throw new IOException(String.format(ERROR_ENTRY, i, file));
+            }
+            byte[] name = new byte[nameLength];
+            buffer.get(name);
+            float sampleRate = buffer.getFloat();
+            int sampleSize = buffer.getInt();
+            int channels = buffer.getInt();
+            boolean signed = buffer.get() == SIGNED;
+            boolean bigEndian = buffer.get() != 0;
+            int offset = buffer.getInt();
+            int length = buffer.getInt();
+            if(sampleSize <= 0 || channels <= 0 || offset < 0 || length < 0 || (long) offset + length > buffer.capacity())
+            {
+                throw new IOException(String.format(ERROR_ENTRY, i, file));
+            }
+            AudioFormat format = new AudioFormat(sampleRate, sampleSize, channels, signed, bigEndian);
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(offset + length);
+            slice.position(offset);
+            String word = new String(name, StandardCharsets.UTF_8);
+            words.put(word, new WordClip(word, format, slice));
+        }
+        return words;
+    }
+
+    /**
+     * Build time entry point, decodes all clips of a directory and writes them into one container file
+     * @author Philipp Schulz
+     * @param args Directory containing the clips and the output file
+     */
+    public static void main(String[] args)
+    {
+        if(args.length != 2)
+        {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        try
+        {
+            WordBank wordBank = new WordBank(new File(args[0]), false);
+            File output = new File(args[1]);
+            long size = write(wordBank, output);
+            System.out.printf(PACK_OUTPUT, wordBank.getWordCount(), output, size);
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Makes sure that a clip can be stored in the container
+     * @author Philipp Schulz
+     * @param clip Clip that should be checked
+     * @throws IOException When the clip is not linear PCM
+     */
+    private static void checkEncoding(WordClip clip) throws IOException
+    {
+        AudioFormat.Encoding encoding = clip.getFormat().getEncoding();
+        if(encoding != AudioFormat.Encoding.PCM_SIGNED && encoding != AudioFormat.Encoding.PCM_UNSIGNED)
+        {
+            throw new IOException(ERROR_ENCODING + clip.getWord());
+        }
+    }
+
+    /**
+     * Rounds an offset up to the alignment of the PCM data
+     * @author Philipp Schulz
+     * @param offset Offset that should be aligned
+     * @return Aligned offset
+     */
+    private static int align(int offset)
+    {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Writes zeros until the given length is aligned
+     * @author Philipp Schulz
+     * @param out Stream that should be padded
+     * @param length Length of the data written before
+     * @throws IOException When the stream could not be written
+     */
+    private static void pad(DataOutputStream out, int length) throws IOException
+    {
+        for(int i = length; i < align(length); i++)
+        {
+            out.writeByte(0);
+        }
+    }
+}
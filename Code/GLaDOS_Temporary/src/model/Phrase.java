@@ -0,0 +1,69 @@
+package model;
+
+/**
+ * A response phrase that has been compiled into word IDs at startup
+ * @author Philipp Schulz
+ */
+public class Phrase
+{
+    private final String text;
+    private final String key;
+    private final WordSequence words;
+    private final int missingWords;
+
+    /**
+     * Creates a compiled phrase
+     * @author Philipp Schulz
+     * @param text Text of the phrase as it is passed to the Sound class
+     * @param key Normalized text of the phrase, used as key for the phrase cache
+     * @param words IDs of all words of the phrase that are part of the word bank
+     * @param missingWords Number of words of the phrase that are not part of the word bank
+     */
+    public Phrase(String text, String key, WordSequence words, int missingWords)
+    {
+        this.text = text;
+        this.key = key;
+        this.words = words;
+        this.missingWords = missingWords;
+    }
+
+    /**
+     * Returns the text of the phrase
+     * @author Philipp Schulz
+     * @return Text of the phrase
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Returns the normalized text of the phrase
+     * @author Philipp Schulz
+     * @return Key of the phrase for the phrase cache
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Returns the IDs of all words of the phrase, the sequence must not be changed
+     * @author Philipp Schulz
+     * @return Word IDs of the phrase
+     */
+    public WordSequence getWords()
+    {
+        return words;
+    }
+
+    /**
+     * Returns how many words of the phrase are not part of the word bank
+     * @author Philipp Schulz
+     * @return Number of missing words
+     */
+    public int getMissingWords()
+    {
+        return missingWords;
+    }
+}
@@ -0,0 +1,200 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of fully rendered phrases, so that repeated responses do not have to be assembled again
+ * @author Philipp Schulz
+ */
+public class PhraseCache
+{
+    private final LinkedHashMap<String, WordClip> phrases;
+    private final long maximumBytes;
+    private long residentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private final int INITIAL_CAPACITY = 16;
+    private final float LOAD_FACTOR = 0.75f;
+    private final String WHITESPACE = "\\s+";
+    private final String SPACER = " ";
+    private final String STATISTICS_OUTPUT = "Sound: phrase cache %d hits, %d misses, %d evictions, %d phrases, %d bytes";
+
+    /**
+     * Creates an empty phrase cache
+     * @author Philipp Schulz
+     * @param maximumBytes Maximum number of PCM bytes the cache may hold
+     */
+    public PhraseCache(long maximumBytes)
+    {
+        this.phrases = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * Normalizes a message so that messages which only differ in whitespace share the same cache entry
+     * @author Philipp Schulz
+     * @param msg Message that should be normalized
+     * @return Normalized message
+     */
+    public String normalize(String msg)
+    {
+        return msg.trim().replaceAll(WHITESPACE, SPACER);
+    }
+
+    /**
+     * Looks up the rendered audio of a phrase and updates the hit and miss counters
+     * @author Philipp Schulz
+     * @param key Normalized message of the phrase
+     * @return Rendered phrase or null if it is not cached
+     */
+    public synchronized WordClip get(String key)
+    {
+        WordClip phrase = phrases.get(key);
+        if(phrase != null)
+        {
+            hits++;
+        }
+        else
+        {
+            misses++;
+        }
+        return phrase;
+    }
+
+    /**
+     * Renders the given words into one clip and stores it, the least recently used phrases are evicted to stay below the memory cap
+     * @author Philipp Schulz
+     * @param key Normalized message of the phrase
+     * @param words Words of the phrase in the order they are spoken
+     * @return Rendered phrase or null if the words can not be rendered into one clip
+     */
+    public synchronized WordClip put(String key, List<WordClip> words)
+    {
+        WordClip phrase = render(key, words);
+        if(phrase == null || phrase.getLength() > maximumBytes)
+        {
+            return phrase;
+        }
+        WordClip previous = phrases.put(key, phrase);
+        if(previous != null)
+        {
+            residentBytes -= previous.getLength();
+        }
+        residentBytes += phrase.getLength();
+        Iterator<Map.Entry<String, WordClip>> iterator = phrases.entrySet().iterator();
+        while(residentBytes > maximumBytes && iterator.hasNext())
+        {
+            residentBytes -= iterator.next().getValue().getLength();
+            iterator.remove();
+            evictions++;
+        }
+        return phrase;
+    }
+
+    /**
+     * Concatenates the PCM data of all words into a single clip, which keeps where the words start and the silence in front of them
+     * @author Philipp Schulz
+     * @param key Normalized message of the phrase
+     * @param words Words of the phrase in the order they are spoken
+     * @return Rendered phrase or null if the words do not share the same format
+     */
+    private WordClip render(String key, List<WordClip> words)
+    {
+        if(words.isEmpty())
+        {
+            return null;
+        }
+        int length = 0;
+        for(WordClip word : words)
+        {
+            if(!word.getFormat().matches(words.get(0).getFormat()))
+            {
+                return null;
+            }
+            length += word.getLength();
+        }
+        byte[] data = new byte[length];
+        int[] wordStarts = new int[words.size()];
+        int[] gapLengths = new int[words.size()];
+        int boundaries = 0;
+        int gap = 0;
+        boolean spoken = false;
+        int offset = 0;
+        for(WordClip word : words)
+        {
+            if(word.isSilence())
+            {
+                gap += word.getLength();
+            }
+            else
+            {
+                if(spoken)
+                {
+                    wordStarts[boundaries] = offset;
+                    gapLengths[boundaries++] = gap;
+                }
+                spoken = true;
+                gap = 0;
+            }
+            offset += word.read(0, data, offset, word.getLength());
+        }
+        return new WordClip(key, words.get(0).getFormat(), data, Arrays.copyOf(wordStarts, boundaries), Arrays.copyOf(gapLengths, boundaries));
+    }
+
+    /**
+     * Returns how often a phrase was found in the cache
+     * @author Philipp Schulz
+     * @return Number of cache hits
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns how often a phrase had to be assembled
+     * @author Philipp Schulz
+     * @return Number of cache misses
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns how often a phrase was removed to stay below the memory cap
+     * @author Philipp Schulz
+     * @return Number of evictions
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of PCM bytes held by the cache
+     * @author Philipp Schulz
+     * @return Resident bytes of all cached phrases
+     */
+    public synchronized long getResidentBytes()
+    {
+        return residentBytes;
+    }
+
+    /**
+     * Returns the statistics of the cache
+     * @author Philipp Schulz
+     * @return String containing counters and memory usage of the cache
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(STATISTICS_OUTPUT, hits, misses, evictions, phrases.size(), residentBytes);
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles every known response phrase into word IDs at startup and reports words missing from the word bank
+ * @author Philipp Schulz
+ */
+public class PhraseRegistry
+{
+    private final PhraseTokenizer tokenizer;
+    private final PhraseCache phraseCache;
+    private final Map<String, Phrase> phrases;
+
+    private final String ERROR_MISSING_WORDS = "Sound: phrase \"%s\" is missing words %s%n";
+    private final String REGISTER_OUTPUT = "Sound: compiled %d phrases, %d missing words%n";
+
+    /**
+     * Creates an empty registry
+     * @author Philipp Schulz
+     * @param wordBank Word bank the phrases are compiled against
+     * @param phraseCache Cache whose keys are used for the compiled phrases
+     */
+    public PhraseRegistry(WordBank wordBank, PhraseCache phraseCache)
+    {
+        this.tokenizer = new PhraseTokenizer(wordBank);
+        this.phraseCache = phraseCache;
+        this.phrases = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Compiles the given phrases and logs every word that is missing in the word bank
+     * @author Philipp Schulz
+     * @param texts Texts of the phrases exactly as they are passed to the Sound class
+     * @return Total number of missing words, 0 if every phrase can be spoken completely
+     */
+    public synchronized int register(String... texts)
+    {
+        int missingTotal = 0;
+        for(String text : texts)
+        {
+            List<String> missing = new ArrayList<>();
+            WordSequence words = new WordSequence();
+            tokenizer.tokenize(text, words, missing::add);
+            if(!missing.isEmpty())
+            {
+                System.out.printf(ERROR_MISSING_WORDS, text, missing);
+            }
+            phrases.put(text, new Phrase(text, phraseCache.normalize(text), words, missing.size()));
+            missingTotal += missing.size();
+        }
+        System.out.printf(REGISTER_OUTPUT, texts.length, missingTotal);
+        return missingTotal;
+    }
+
+    /**
+     * Returns the compiled phrase of a text
+     * @author Philipp Schulz
+     * @param text Text of the phrase
+     * @return Compiled phrase or null if the text has not been registered
+     */
+    public Phrase get(String text)
+    {
+        return phrases.get(text);
+    }
+}
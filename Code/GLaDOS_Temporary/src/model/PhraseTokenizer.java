@@ -0,0 +1,118 @@
+package model;
+
+/**
+ * Splits a message into word IDs of the word bank in a single pass, numbers are expanded into their words
+ * An instance keeps state between the calls and must only be used by one thread
+ * @author Philipp Schulz
+ */
+public class PhraseTokenizer implements WordSink
+{
+    private final WordBank wordBank;
+    private final int pointId;
+    private WordSequence target;
+    private WordSink missingWords;
+
+    private final char DOT = '.';
+    private final String POINT = "point";
+
+    /**
+     * Creates a tokenizer for the given word bank
+     * @author Philipp Schulz
+     * @param wordBank Word bank the IDs refer to
+     */
+    public PhraseTokenizer(WordBank wordBank)
+    {
+        this.wordBank = wordBank;
+        this.pointId = wordBank.getId(POINT);
+    }
+
+    /**
+     * Splits a message at its whitespace and appends the IDs of all words to the target sequence
+     * Words that are not part of the word bank are skipped and handed to the sink for missing words
+     * @author Philipp Schulz
+     * @param msg Message that should be split
+     * @param target Sequence the word IDs are appended to
+     * @param missingWords Sink receiving every word that is not part of the word bank
+     */
+    public void tokenize(CharSequence msg, WordSequence target, WordSink missingWords)
+    {
+        this.target = target;
+        this.missingWords = missingWords;
+        int length = msg.length();
+        int index = 0;
+        while(index < length)
+        {
+            while(index < length && Character.isWhitespace(msg.charAt(index)))
+            {
+                index++;
+            }
+            int begin = index;
+            while(index < length && !Character.isWhitespace(msg.charAt(index)))
+            {
+                index++;
+            }
+            if(begin < index)
+            {
+                addToken(msg, begin, index);
+            }
+        }
+        this.target = null;
+        this.missingWords = null;
+    }
+
+    /**
+     * Classifies a single token as a dot, a number or a word and appends its IDs
+     * @author Philipp Schulz
+     * @param msg Message containing the token
+     * @param begin Index of the first character of the token
+     * @param end Index after the last character of the token
+     */
+    private void addToken(CharSequence msg, int begin, int end)
+    {
+        if(end - begin == 1 && msg.charAt(begin) == DOT)
+        {
+            addId(pointId, POINT);
+        }
+        else if(!NumberWords.appendNumber(msg, begin, end, this))
+        {
+            int id = wordBank.getId(msg, begin, end);
+            if(id == WordBank.MISSING_ID)
+            {
+                missingWords.accept(msg.subSequence(begin, end).toString());
+            }
+            else
+            {
+                target.add(id);
+            }
+        }
+    }
+
+    /**
+     * Receives the words of an expanded number
+     * @author Philipp Schulz
+     * @param word Word of the number
+     */
+    @Override
+    public void accept(String word)
+    {
+        addId(wordBank.getId(word), word);
+    }
+
+    /**
+     * Appends an ID to the target sequence or reports the word as missing
+     * @author Philipp Schulz
+     * @param id ID of the word, MISSING_ID if it is not part of the word bank
+     * @param word Word belonging to the ID
+     */
+    private void addId(int id, String word)
+    {
+        if(id == WordBank.MISSING_ID)
+        {
+            missingWords.accept(word);
+        }
+        else
+        {
+            target.add(id);
+        }
+    }
+}
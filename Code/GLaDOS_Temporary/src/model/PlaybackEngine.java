@@ -0,0 +1,575 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Mixes all active streams into a single output line that stays open, e.g. speech and sound effects at the same time
+ * The output line is an audio sink, usually the sound card, a null or WAV file sink when measuring without audio hardware
+ * A mixing thread sums the streams block by block with their gain into a fixed mix buffer, nothing is allocated per block
+ * Between phrases the line is kept running with silence, so that the device never falls asleep and the next phrase starts without opening costs
+ * The mixing thread completes the future of a stream once the frame position of the line has passed the last sample of the stream
+ * The time the written data lasts is tracked, so that the silence of a buffer underrun is known and added to the gap between words
+ * @author Philipp Schulz
+ */
+public class PlaybackEngine
+{
+    private final AudioSink sink;
+    private final int bufferSize;
+    private final PlaybackStatistics statistics;
+    private final AtomicLong underruns;
+    private final AtomicLong writtenBytes;
+    private final MixStream[] streams;
+    private final MixStream[] active;
+    private final boolean[] ended;
+    private final ArrayDeque<MixStream> draining;
+    private int streamCount;
+    private volatile AudioSink line;
+    private AudioFormat lineFormat;
+    private byte[] block;
+    private byte[] streamBlock;
+    private int[] mix;
+    private byte[] silence;
+    private int bytesPerSample;
+    private boolean signed;
+    private boolean bigEndian;
+    private int minimumSample;
+    private int maximumSample;
+    private Thread mixerThread;
+    private long writtenFrames;
+    private long drainTime;
+    private boolean silenceQueued;
+    private boolean playing;
+    private volatile boolean flushed;
+
+    private final int CHUNKS_PER_BUFFER = 2;
+    private final int MAXIMUM_STREAMS = 8;
+    private final int PRIME_INTERVAL = 20;
+    private final int BITS_8 = 8;
+    private final int BITS_16 = 16;
+    private final int BYTE_MASK = 0xFF;
+    private final int SIGN_BIT_8 = 0x80;
+    private final int SIGN_BIT_16 = 0x8000;
+    private final long NANOS_PER_MILLI = 1_000_000L;
+    private final double MILLIS_PER_SECOND = 1000.0;
+    private final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private final String MIXER_NAME = "GLaDOS mixer";
+    private final String UNDERRUN_OUTPUT = "Sound: %d buffer underruns in phrase, %d in total%n";
+    private final String OPEN_OUTPUT = "Sound: opened output line on %s with %s in %d ms%n";
+    private final String ERROR_LINE_FORMAT = "output line is already open with ";
+    private final String ERROR_CLIP_FORMAT = "clip does not match the format of the output line: ";
+    private final String ERROR_SAMPLE_FORMAT = "only 8 and 16 bit PCM can be mixed: ";
+    private final String ERROR_STREAMS = "too many active streams";
+
+    /**
+     * Creates the playback engine, the output line is opened by open or with the first stream that is played
+     * @author Philipp Schulz
+     * @param sink Sink the mixed data is written into
+     * @param bufferSize Size of the line buffer in bytes
+     * @param statistics Statistics the latencies of every phrase are recorded into
+     */
+    public PlaybackEngine(AudioSink sink, int bufferSize, PlaybackStatistics statistics)
+    {
+        this.sink = sink;
+        this.bufferSize = bufferSize;
+        this.statistics = statistics;
+        this.underruns = new AtomicLong();
+        this.writtenBytes = new AtomicLong();
+        this.streams = new MixStream[MAXIMUM_STREAMS];
+        this.active = new MixStream[MAXIMUM_STREAMS];
+        this.ended = new boolean[MAXIMUM_STREAMS];
+        this.draining = new ArrayDeque<>(MAXIMUM_STREAMS);
+    }
+
+    /**
+     * Opens the output line and starts the mixing thread, which keeps the line primed with silence until the engine is closed
+     * All streams have to be in the format of the line, so the line is opened only once
+     * @author Philipp Schulz
+     * @param format Format of all streams that will be played
+     * @throws LineUnavailableException When the output line could not be opened
+     */
+    public synchronized void open(AudioFormat format) throws LineUnavailableException
+    {
+        if(line != null)
+        {
+            if(!format.matches(lineFormat))
+            {
+                throw new IllegalArgumentException(ERROR_LINE_FORMAT + lineFormat);
+            }
+            return;
+        }
+        if((format.getSampleSizeInBits() != BITS_8 && format.getSampleSizeInBits() != BITS_16)
+                || (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED && format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED))
+        {
+            throw new IllegalArgumentException(ERROR_SAMPLE_FORMAT + format);
+        }
+        long start = System.nanoTime();
+        sink.open(format, bufferSize);
+        bytesPerSample = format.getSampleSizeInBits() / BITS_8;
+        signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+        bigEndian = format.isBigEndian();
+        minimumSample = bytesPerSample == 1 ? Byte.MIN_VALUE : Short.MIN_VALUE;
+        maximumSample = bytesPerSample == 1 ? Byte.MAX_VALUE : Short.MAX_VALUE;
+        int blockSize = bufferSize / CHUNKS_PER_BUFFER / format.getFrameSize() * format.getFrameSize();
+        block = new byte[blockSize];
+        streamBlock = new byte[blockSize];
+        mix = new int[blockSize / bytesPerSample];
+        silence = new byte[blockSize];
+        for(int i = 0; i < mix.length; i++)
+        {
+            putSample(silence, i, 0);
+        }
+        writtenFrames = 0;
+        lineFormat = format;
+        line = sink;
+        System.out.printf(OPEN_OUTPUT, sink.getName(), format, (System.nanoTime() - start) / NANOS_PER_MILLI);
+        mixerThread = new Thread(MIXER_NAME)
+        {
+            @Override
+            public void run()
+            {
+                runMixer(sink);
+            }
+        };
+        mixerThread.setDaemon(true);
+        mixerThread.start();
+    }
+
+    /**
+     * Adds a stream to the mix, it starts playing with the next block
+     * @author Philipp Schulz
+     * @param stream Stream whose clips are in the format of the output line
+     * @throws LineUnavailableException When the output line had to be opened and could not be opened
+     */
+    public synchronized void addStream(MixStream stream) throws LineUnavailableException
+    {
+        List<WordClip> clips = stream.getClips();
+        if(clips.isEmpty())
+        {
+            stream.finish(0);
+            stream.complete();
+            return;
+        }
+        if(line == null)
+        {
+            open(clips.get(0).getFormat());
+        }
+        for(WordClip clip : clips)
+        {
+            if(!clip.getFormat().matches(lineFormat))
+            {
+                throw new IllegalArgumentException(ERROR_CLIP_FORMAT + clip.getWord());
+            }
+        }
+        if(streamCount == MAXIMUM_STREAMS)
+        {
+            throw new IllegalStateException(ERROR_STREAMS);
+        }
+        streams[streamCount++] = stream;
+        notifyAll();
+    }
+
+    /**
+     * Plays the words of the given job and blocks until the last sample has been played or the job was cancelled
+     * @author Philipp Schulz
+     * @param job Job whose words should be played in the given order
+     * @throws LineUnavailableException When the output line could not be opened
+     */
+    public void play(PlaybackJob job) throws LineUnavailableException
+    {
+        long underrunsBefore = underruns.get();
+        MixStream stream = new MixStream(job.getWords(), 1f, job.getCreatedTime(), statistics);
+        job.setStream(stream);
+        addStream(stream);
+        try
+        {
+            stream.getPlayed().get();                                       //completed by the mixing thread
+        }
+        catch(InterruptedException e)
+        {
+            stream.cancel();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch(ExecutionException e)
+        {
+            e.printStackTrace();
+        }
+        if(!job.isCancelled() && stream.getFirstAudioTime() != 0)
+        {
+            statistics.getPhraseDuration().record(System.nanoTime() - stream.getFirstAudioTime());
+        }
+        long phraseUnderruns = underruns.get() - underrunsBefore;
+        if(phraseUnderruns > 0)
+        {
+            System.out.printf(UNDERRUN_OUTPUT, phraseUnderruns, underruns.get());
+        }
+    }
+
+    /**
+     * Main loop of the mixing thread, mixes one block after another while streams are active and primes the line otherwise
+     * @author Philipp Schulz
+     * @param output Output line the mix is written into
+     */
+    private void runMixer(AudioSink output)
+    {
+        int frameSize = lineFormat.getFrameSize();
+        while(!Thread.currentThread().isInterrupted())
+        {
+            int count;
+            synchronized(this)
+            {
+                while(streamCount == 0)
+                {
+                    if(output.isRealTime())
+                    {
+                        primeSilence(output, frameSize);
+                    }
+                    long waitTime = completePlayed(output);
+                    try
+                    {
+                        wait(waitTime);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+                count = streamCount;
+                System.arraycopy(streams, 0, active, 0, count);
+            }
+            if(silenceQueued)
+            {
+                // drop the queued priming silence, so that the stream starts immediately
+                output.flush();
+                silenceQueued = false;
+                flushed = true;
+            }
+            completePlayed(output);
+            long now = System.nanoTime();
+            boolean underrun = playing && output.isRealTime() && output.available() >= output.getBufferSize();
+            if(underrun)
+            {
+                // the silence is heard before the next block, so it belongs to the gap in front of a word that starts in it
+                addUnderrunSilence(count, Math.max(0, now - drainTime));
+            }
+            int length = mixBlock(count);
+            if(length > 0)
+            {
+                if(underrun)
+                {
+                    underruns.incrementAndGet();
+                }
+                drainTime = Math.max(now, drainTime) + (long) (length / frameSize * NANOS_PER_SECOND / lineFormat.getFrameRate());
+                output.write(block, 0, length);
+                writtenBytes.addAndGet(length);
+                writtenFrames += length / frameSize;
+            }
+            playing = length > 0;
+            finishStreams(count);
+        }
+    }
+
+    /**
+     * Adds the silence of a buffer underrun to all streams of the next block, the line ran empty when the written data ended
+     * @author Philipp Schulz
+     * @param count Number of active streams
+     * @param silence Time in ns the line played nothing
+     */
+    private void addUnderrunSilence(int count, long silence)
+    {
+        for(int i = 0; i < count; i++)
+        {
+            active[i].addUnderrunSilence(silence);
+        }
+    }
+
+    /**
+     * Completes the streams whose last sample has been played by the output line
+     * After a flush the buffered data of all streams is gone, so they are completed at once
+     * @author Philipp Schulz
+     * @param output Output line
+     * @return Time in ms until the next stream is expected to be played, PRIME_INTERVAL if no stream is draining
+     */
+    private synchronized long completePlayed(AudioSink output)
+    {
+        long position = output.getLongFramePosition();
+        if(flushed)
+        {
+            flushed = false;
+            writtenFrames = position;
+            position = Long.MAX_VALUE;
+        }
+        MixStream stream = draining.peekFirst();
+        while(stream != null && stream.getEndFrame() <= position)
+        {
+            draining.pollFirst().complete();
+            stream = draining.peekFirst();
+        }
+        if(stream == null)
+        {
+            return PRIME_INTERVAL;
+        }
+        long remaining = (long) ((stream.getEndFrame() - position) * MILLIS_PER_SECOND / lineFormat.getFrameRate()) + 1;
+        return Math.min(PRIME_INTERVAL, remaining);
+    }
+
+    /**
+     * Tops up the line with silence while no stream is active
+     * @author Philipp Schulz
+     * @param output Output line
+     * @param frameSize Size of a frame in bytes
+     */
+    private void primeSilence(AudioSink output, int frameSize)
+    {
+        int queued = output.getBufferSize() - output.available();
+        int missing = silence.length - queued;
+        missing -= missing % frameSize;
+        if(missing > 0)
+        {
+            output.write(silence, 0, missing);
+            writtenFrames += missing / frameSize;
+            silenceQueued = true;
+        }
+        playing = false;
+    }
+
+    /**
+     * Mixes the next block of all active streams into the block buffer
+     * A single stream with a gain of 1 is copied without mixing, so that it is played bit exact
+     * @author Philipp Schulz
+     * @param count Number of active streams
+     * @return Number of bytes in the block buffer
+     */
+    private int mixBlock(int count)
+    {
+        if(count == 1 && active[0].getGain() == 1f)
+        {
+            return readStream(0, block);
+        }
+        Arrays.fill(mix, 0);
+        int length = 0;
+        for(int i = 0; i < count; i++)
+        {
+            int read = readStream(i, streamBlock);
+            float gain = active[i].getGain();
+            for(int sample = 0; sample < read / bytesPerSample; sample++)
+            {
+                mix[sample] += Math.round(getSample(streamBlock, sample) * gain);
+            }
+            length = Math.max(length, read);
+        }
+        for(int sample = 0; sample < length / bytesPerSample; sample++)
+        {
+            putSample(block, sample, Math.max(minimumSample, Math.min(maximumSample, mix[sample])));
+        }
+        return length;
+    }
+
+    /**
+     * Reads the next block of an active stream, marks the stream as ended when it has no more data or was cancelled
+     * @author Philipp Schulz
+     * @param index Index of the stream in the active streams
+     * @param target Array the data is read into
+     * @return Number of bytes read
+     */
+    private int readStream(int index, byte[] target)
+    {
+        MixStream stream = active[index];
+        ended[index] = stream.isCancelled();
+        int length = 0;
+        while(!ended[index] && length < target.length)
+        {
+            int count = stream.read(target, length, target.length - length);
+            if(count < 0)
+            {
+                ended[index] = true;
+            }
+            else
+            {
+                length += count;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Removes all streams that ended with the last block, cancelled streams are completed at once and all others once they are played
+     * @author Philipp Schulz
+     * @param count Number of active streams
+     */
+    private synchronized void finishStreams(int count)
+    {
+        for(int i = 0; i < count; i++)
+        {
+            if(!ended[i])
+            {
+                continue;
+            }
+            active[i].finish(writtenFrames);
+            if(active[i].isCancelled())
+            {
+                active[i].complete();
+            }
+            else
+            {
+                draining.addLast(active[i]);
+            }
+            for(int j = 0; j < streamCount; j++)
+            {
+                if(streams[j] == active[i])
+                {
+                    System.arraycopy(streams, j + 1, streams, j, streamCount - j - 1);
+                    streams[--streamCount] = null;
+                    break;
+                }
+            }
+            active[i] = null;
+        }
+    }
+
+    /**
+     * Reads a sample of the line format from a block
+     * @author Philipp Schulz
+     * @param data Block containing the PCM data
+     * @param sample Index of the sample
+     * @return Signed value of the sample
+     */
+    private int getSample(byte[] data, int sample)
+    {
+        if(bytesPerSample == 1)
+        {
+            return signed ? data[sample] : (data[sample] & BYTE_MASK) - SIGN_BIT_8;
+        }
+        int index = sample * bytesPerSample;
+        int low = data[bigEndian ? index + 1 : index] & BYTE_MASK;
+        int high = data[bigEndian ? index : index + 1] & BYTE_MASK;
+        int value = (high << BITS_8) | low;
+        return signed ? (short) value : value - SIGN_BIT_16;
+    }
+
+    /**
+     * Writes a sample in the line format into a block
+     * @author Philipp Schulz
+     * @param data Block the PCM data is written into
+     * @param sample Index of the sample
+     * @param value Signed value of the sample, already inside of the sample range
+     */
+    private void putSample(byte[] data, int sample, int value)
+    {
+        if(bytesPerSample == 1)
+        {
+            data[sample] = (byte) (signed ? value : value + SIGN_BIT_8);
+            return;
+        }
+        int raw = signed ? value : value + SIGN_BIT_16;
+        int index = sample * bytesPerSample;
+        data[bigEndian ? index + 1 : index] = (byte) raw;
+        data[bigEndian ? index : index + 1] = (byte) (raw >> BITS_8);
+    }
+
+    /**
+     * Removes a stream from the mix, used to stop a cancelled job immediately
+     * The data buffered in the output line is only discarded if no other stream is playing or draining, so that sound effects
+     * playing at the same time are neither cut off nor reported as played too early
+     * @author Philipp Schulz
+     * @param stream Stream that should be stopped
+     */
+    public synchronized void cancel(MixStream stream)
+    {
+        stream.cancel();
+        if(draining.remove(stream))
+        {
+            stream.complete();                                                  //its data is only left in the line buffer
+        }
+        for(int i = 0; i < streamCount; i++)
+        {
+            if(streams[i] != stream)
+            {
+                return;
+            }
+        }
+        if(line != null && draining.isEmpty())
+        {
+            line.flush();
+            flushed = true;
+        }
+    }
+
+    /**
+     * Stops the mixing thread, drains and closes the output line
+     * @author Philipp Schulz
+     */
+    public synchronized void close()
+    {
+        if(mixerThread != null)
+        {
+            mixerThread.interrupt();
+            mixerThread = null;
+        }
+        if(line != null)
+        {
+            line.drain();
+            line.close();
+            line = null;
+            lineFormat = null;
+        }
+        for(MixStream stream : draining)
+        {
+            stream.complete();
+        }
+        draining.clear();
+        for(int i = 0; i < streamCount; i++)
+        {
+            streams[i].cancel();
+            streams[i].complete();
+            streams[i] = null;
+        }
+        streamCount = 0;
+    }
+
+    /**
+     * Returns the format of the output line
+     * @author Philipp Schulz
+     * @return Format all streams have to be in, null if the line is not open yet
+     */
+    public synchronized AudioFormat getFormat()
+    {
+        return lineFormat;
+    }
+
+    /**
+     * Returns how often the line buffer ran empty while streams were being mixed
+     * @author Philipp Schulz
+     * @return Number of buffer underruns since startup
+     */
+    public long getUnderruns()
+    {
+        return underruns.get();
+    }
+
+    /**
+     * Returns the number of bytes written into the output line, without the priming silence
+     * @author Philipp Schulz
+     * @return Written bytes since startup
+     */
+    public long getWrittenBytes()
+    {
+        return writtenBytes.get();
+    }
+
+    /**
+     * Returns the configured size of the line buffer
+     * @author Philipp Schulz
+     * @return Buffer size in bytes
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+}
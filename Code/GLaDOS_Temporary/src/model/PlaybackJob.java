@@ -0,0 +1,167 @@
+package model;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single utterance waiting for or being played by the playback worker of the Sound class
+ * @author Philipp Schulz
+ */
+public class PlaybackJob implements Comparable<PlaybackJob>
+{
+    public static final int PRIORITY_CHATTER = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_CONFIRMATION = 2;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String message;
+    private final int priority;
+    private final long sequence;
+    private final long createdTime;
+    private final CompletableFuture<Void> completion;
+    private volatile boolean cancelled;
+    private volatile MixStream stream;
+    private List<WordClip> words;
+
+    /**
+     * Creates a new job for the given message
+     * @author Philipp Schulz
+     * @param message Message that should be spoken
+     * @param priority Priority of the message, higher priorities are played first
+     */
+    public PlaybackJob(String message, int priority)
+    {
+        this.message = message;
+        this.priority = priority;
+        this.sequence = SEQUENCE.getAndIncrement();
+        this.createdTime = System.nanoTime();
+        this.completion = new CompletableFuture<>();
+    }
+
+    /**
+     * Returns the message of this job
+     * @author Philipp Schulz
+     * @return Message that should be spoken
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * Returns the priority of this job
+     * @author Philipp Schulz
+     * @return Priority of the message
+     */
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * Returns the time this job was created, i.e. the time playSound was called
+     * @author Philipp Schulz
+     * @return Creation time from System.nanoTime()
+     */
+    public long getCreatedTime()
+    {
+        return createdTime;
+    }
+
+    /**
+     * Returns the future that completes once the output line has drained the last sample of this job
+     * A cancelled job completes as soon as it has been stopped, so actions chained onto it still run
+     * @author Philipp Schulz
+     * @return Future that completes when the job has been played
+     */
+    public CompletableFuture<Void> getCompletion()
+    {
+        return completion;
+    }
+
+    /**
+     * Cancels this job, a job that is already playing stops after the current chunk
+     * @author Philipp Schulz
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        MixStream current = stream;
+        if(current != null)
+        {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Checks whether this job has been cancelled
+     * @author Philipp Schulz
+     * @return True if the job has been cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Returns the assembled words of this job
+     * @author Philipp Schulz
+     * @return Words of the message, null before the job has been assembled
+     */
+    public List<WordClip> getWords()
+    {
+        return words;
+    }
+
+    /**
+     * Sets the assembled words of this job, only called by the playback worker
+     * @author Philipp Schulz
+     * @param words Words of the message
+     */
+    void setWords(List<WordClip> words)
+    {
+        this.words = words;
+    }
+
+    /**
+     * Sets the stream the words of this job are played with, so that cancelling the job stops the stream
+     * @author Philipp Schulz
+     * @param stream Stream of the job in the playback engine
+     */
+    void setStream(MixStream stream)
+    {
+        this.stream = stream;
+        if(cancelled)
+        {
+            stream.cancel();
+        }
+    }
+
+    /**
+     * Returns the stream the words of this job are played with
+     * @author Philipp Schulz
+     * @return Stream of the job in the playback engine, null if the job has not been started yet
+     */
+    MixStream getStream()
+    {
+        return stream;
+    }
+
+    /**
+     * Orders jobs by descending priority, jobs of the same priority are played in the order they were created
+     * @author Philipp Schulz
+     * @param other Job this job should be compared with
+     * @return Negative value if this job should be played first
+     */
+    @Override
+    public int compareTo(PlaybackJob other)
+    {
+        if(priority != other.priority)
+        {
+            return Integer.compare(other.priority, priority);
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
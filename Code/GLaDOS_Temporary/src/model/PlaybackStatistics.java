@@ -0,0 +1,90 @@
+package model;
+
+/**
+ * Latency histograms of the speech output, recorded per utterance by the playback worker and engine
+ * @author Philipp Schulz
+ */
+public class PlaybackStatistics
+{
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram timeToFirstAudio;
+    private final LatencyHistogram wordGap;
+    private final LatencyHistogram phraseDuration;
+
+    private final String OUTPUT = "Sound: playback latency%n  %s%n  %s%n  %s%n  %s";
+
+    /**
+     * Creates empty statistics
+     * @author Philipp Schulz
+     */
+    public PlaybackStatistics()
+    {
+        queueWait = new LatencyHistogram("queue wait");
+        timeToFirstAudio = new LatencyHistogram("playSound to first audio");
+        wordGap = new LatencyHistogram("gap between words");
+        phraseDuration = new LatencyHistogram("phrase duration");
+    }
+
+    /**
+     * Returns the time jobs waited in the queue before the worker took them
+     * @author Philipp Schulz
+     * @return Histogram of the queue wait
+     */
+    public LatencyHistogram getQueueWait()
+    {
+        return queueWait;
+    }
+
+    /**
+     * Returns the time from the call of playSound until the first audio was written into the line
+     * @author Philipp Schulz
+     * @return Histogram of the time to first audio
+     */
+    public LatencyHistogram getTimeToFirstAudio()
+    {
+        return timeToFirstAudio;
+    }
+
+    /**
+     * Returns the silence heard between two words, the configured word gap plus the silence of buffer underruns
+     * @author Philipp Schulz
+     * @return Histogram of the gaps between words
+     */
+    public LatencyHistogram getWordGap()
+    {
+        return wordGap;
+    }
+
+    /**
+     * Returns the time from the first audio written until the line has drained the phrase
+     * @author Philipp Schulz
+     * @return Histogram of the phrase durations
+     */
+    public LatencyHistogram getPhraseDuration()
+    {
+        return phraseDuration;
+    }
+
+    /**
+     * Removes all recorded durations
+     * @author Philipp Schulz
+     */
+    public void reset()
+    {
+        queueWait.reset();
+        timeToFirstAudio.reset();
+        wordGap.reset();
+        phraseDuration.reset();
+    }
+
+    /**
+     * Returns a summary of all histograms
+     * @author Philipp Schulz
+     * @return One line per histogram
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(OUTPUT, queueWait, timeToFirstAudio, wordGap, phraseDuration);
+    }
+}
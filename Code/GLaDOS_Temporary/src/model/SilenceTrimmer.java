@@ -0,0 +1,123 @@
+package model;
+
+import java.nio.ByteBuffer;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Removes the leading and trailing silence of word clips, so that consecutive words follow each other like in real speech
+ * The trimmed clips are views of the original PCM data, nothing is copied
+ * @author Philipp Schulz
+ */
+public class SilenceTrimmer
+{
+    private static final int BITS_8 = 8;
+    private static final int BITS_16 = 16;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int SIGN_BIT_8 = 0x80;
+    private static final int SIGN_BIT_16 = 0x8000;
+    private static final float MAXIMUM_8 = 128f;
+    private static final float MAXIMUM_16 = 32768f;
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    private SilenceTrimmer()
+    {
+    }
+
+    /**
+     * Cuts the silence at the start and the end of a clip, a margin of silence is kept on both sides
+     * Only 8 and 16 bit PCM is trimmed, clips in other formats and clips that are silent as a whole are returned unchanged
+     * @author Philipp Schulz
+     * @param clip Clip that should be trimmed
+     * @param threshold Amplitude between 0 and 1 that a sample has to exceed to count as sound
+     * @param margin Silence in milliseconds that is kept before the first and after the last sound
+     * @return Trimmed clip, the given clip if nothing was trimmed
+     */
+    public static WordClip trim(WordClip clip, float threshold, int margin)
+    {
+        AudioFormat format = clip.getFormat();
+        int sampleSize = format.getSampleSizeInBits();
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if((sampleSize != BITS_8 && sampleSize != BITS_16)
+                || (encoding != AudioFormat.Encoding.PCM_SIGNED && encoding != AudioFormat.Encoding.PCM_UNSIGNED))
+        {
+            return clip;
+        }
+        ByteBuffer data = clip.getData();
+        int frameSize = format.getFrameSize();
+        int frames = clip.getLength() / frameSize;
+        int first = 0;
+        while(first < frames && !isSound(data, format, first, threshold))
+        {
+            first++;
+        }
+        if(first == frames)
+        {
+            return clip;
+        }
+        int last = frames - 1;
+        while(last > first && !isSound(data, format, last, threshold))
+        {
+            last--;
+        }
+        int marginFrames = (int) (format.getFrameRate() * margin / MILLIS_PER_SECOND);
+        int begin = Math.max(0, first - marginFrames);
+        int end = Math.min(frames, last + 1 + marginFrames);
+        if(begin == 0 && end == frames)
+        {
+            return clip;
+        }
+        data.limit(end * frameSize);
+        data.position(begin * frameSize);
+        return new WordClip(clip.getWord(), format, data);
+    }
+
+    /**
+     * Checks whether any channel of a frame exceeds the threshold
+     * @author Philipp Schulz
+     * @param data PCM data of the clip
+     * @param format Format of the PCM data
+     * @param frame Index of the frame
+     * @param threshold Amplitude between 0 and 1 that a sample has to exceed
+     * @return True if the frame is not silent
+     */
+    private static boolean isSound(ByteBuffer data, AudioFormat format, int frame, float threshold)
+    {
+        int bytesPerSample = format.getSampleSizeInBits() / BITS_8;
+        boolean signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+        int index = frame * format.getFrameSize();
+        for(int channel = 0; channel < format.getChannels(); channel++)
+        {
+            float amplitude;
+            if(bytesPerSample == 1)
+            {
+                int value = data.get(index) & BYTE_MASK;
+                amplitude = (signed ? (byte) value : value - SIGN_BIT_8) / MAXIMUM_8;
+            }
+            else
+            {
+                int low = data.get(format.isBigEndian() ? index + 1 : index) & BYTE_MASK;
+                int high = data.get(format.isBigEndian() ? index : index + 1) & BYTE_MASK;
+                int value = (high << BITS_8) | low;
+                amplitude = (signed ? (short) value : value - SIGN_BIT_16) / MAXIMUM_16;
+            }
+            if(Math.abs(amplitude) > threshold)
+            {
+                return true;
+            }
+            index += bytesPerSample;
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the playing time of a number of PCM bytes
+     * @author Philipp Schulz
+     * @param format Format of the PCM data
+     * @param bytes Number of bytes
+     * @return Playing time in milliseconds
+     */
+    public static double toMillis(AudioFormat format, long bytes)
+    {
+        return bytes * (double) MILLIS_PER_SECOND / (format.getFrameSize() * format.getFrameRate());
+    }
+}
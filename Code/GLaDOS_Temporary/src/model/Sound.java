@@ -1,14 +1,24 @@
 package model;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
 
 /**
  * Temporary Sound Class for playing sounds corresponding to words and numbers in a given string
@@ -17,57 +27,68 @@ import javax.sound.sampled.Mixer;
 public class Sound
 {
     public boolean isWindows;
-    private ArrayList<AudioInputStream> clips;
-    
-    private final int MINUS1 = -1;
-    private final int TRIPLET_OFFSET = 3;
-    private final int TWENTY = 20;
-    private final int DECIMAL_ROUND = 4;
-    private final int ZERO_INT=0;
-    private final String EMPTY_STRING = "";
+    
     private final String SPACER = " ";
-    private final String DOT = ".";
-    private final String ZERO = "0";
-    private final String TRIPLET_ZERO = "000";
-    private final int T0=0;
-    private final int T1=1;
-    private final int T2=2;
-    private final String MINUS = "minus";
-    private final String DOT_WORD = "point";
-    private final String HUNDRED = "hundred";
-    private final String[] SINGLE_DIGITS = {"zero","one","two","three","four","five","six","seven",
-        "eight","nine"};
-    private final String[] UNDER_TWENTY = {"","one","two","three","four","five","six","seven",
-        "eight","nine","ten","eleven","twelve","thirteen","fourteen","fifteen",
-        "sixteen","seventeen","eighteen","nineteen"};
-    private final String[] TEENS_DIGITS = {"","","twenty","thirty","fourty","fifty","sixty","seventy",
-        "eighty","ninety"};
-    private final String[] TEN_STEPS = {"","","thousand","million","billion"};
     
     private Mixer mixer;
-    private volatile boolean hasFinished;
-    private File file;
-    private File homeDir;
-    private Clip clip;
-    private AudioInputStream audioIn;
-    private URL url;
-    private ArrayList<String> messages;
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+    private final PriorityBlockingQueue<PlaybackJob> playbackQueue = new PriorityBlockingQueue<>();
+    private volatile PlaybackJob currentJob;
+    private final Object idleLock = new Object();
+    private Thread playbackWorker;
+    private WordBank wordBank;
+    private PlaybackEngine playbackEngine;
+    private PhraseCache phraseCache;
+    private PhraseTokenizer phraseTokenizer;
+    private PhraseRegistry phraseRegistry;
+    private WordClip wordGap;
+    private final PlaybackStatistics statistics = new PlaybackStatistics();
+    private final WordSequence phraseSequence = new WordSequence();
     
     private final String USER_DIR = "user.dir";
-    private final String SLASH = "/";
     
     private final int INITIAL_INDEX = 0;
-    private final int WAITING_TIME_SOUND = 5;
     private final String MIXER_RASPI_INFO = "Direct Audio Device: USB Audio Device, USB Audio, USB Audio";
+    private final String SINK_PROPERTY = "glados.sound.sink";
+    private final String SINK_LINE = "line";
+    private final String SINK_NULL = "null";
+    private final String SINK_NULL_FAST = "null-fast";
+    private final String SINK_WAV = "wav:";
+    private final String SINK_WAV_FAST = "wav-fast:";
+    private final String ERROR_SINK = "Sound: unknown sink, playing on the sound card: ";
+    private final String MIXER_PROPERTY = "glados.sound.mixer";
+    private final String MIXER_INDEX_PROPERTY = "glados.sound.mixerIndex";
+    private final String MIXER_OUTPUT = "Sound: selected mixer %d \"%s\" (%s)%n";
+    private final String DEFAULT_MIXER_OUTPUT = "Sound: selected the default mixer of the system";
+    private final String ERROR_NO_MIXER = "Sound: no mixer matches %s, falling back to mixer %d%n";
+    private final String SILENCE_THRESHOLD_PROPERTY = "glados.sound.silenceThreshold";
+    private final String DEFAULT_SILENCE_THRESHOLD = "0";                      //trimming is off unless a threshold like 0.01 is set
+    private final String SILENCE_MARGIN_PROPERTY = "glados.sound.silenceMargin";
+    private final int DEFAULT_SILENCE_MARGIN = 15;
+    private final int EFFECT_BUFFER_SIZE = 4096;
+    private final String COMPRESS_WORDS_PROPERTY = "glados.sound.compressWords";
+    private final String WORD_GAP_PROPERTY = "glados.sound.wordGap";
+    private final int DEFAULT_WORD_GAP = 0;                                    //words follow each other like before unless a gap is set
+    private final String WORD_GAP_NAME = "";
+    private final int UNSIGNED_SILENCE = 0x80;
+    private final String BUFFER_SIZE_PROPERTY = "glados.sound.bufferSize";
+    private final int DEFAULT_BUFFER_SIZE = 8192;
+    private final String PHRASE_CACHE_PROPERTY = "glados.sound.phraseCacheBytes";
+    private final long DEFAULT_PHRASE_CACHE_BYTES = 1_048_576;
     
     private final String GLADOS_OUTPUT = "GLaDOS: ";
     private final String FILE_PATH = "source/glados/";
     private final String PI_DIR = "/home/pi/";
-    private final String AUDIO_FORMAT = ".wav";
-    private final String SPACING = " ";
     private final String ERROR_WAITING = "ney ";
     private final int WAITING_TIME = 10;
-    private final String POINT = "point";
+    private final String ERROR_MISSING_WORD = "Sound: missing word ";
+    private final String PLAYBACK_WORKER_NAME = "GLaDOS playback";
+    private final String STATISTICS_NAME = "GLaDOS playback statistics";
+    private final String STATISTICS_INTERVAL_PROPERTY = "glados.sound.statisticsInterval";
+    private final int MILLIS_PER_SECOND = 1000;
+    private final String UNDERRUN_OUTPUT = "Sound: buffer underruns ";
+    private final String ERROR_NOT_NORMALIZED = "Sound: word clips differ in their format and are converted at startup, run the ant target pack-words";
+    private final String ERROR_EFFECT = "Sound: can not play effect ";
     
     public Sound()
     {
@@ -81,243 +102,514 @@ public class Sound
      */
     private void initialize()
     {
-        clips = new ArrayList<>();
-        Mixer.Info[] mixInfos = AudioSystem.getMixerInfo();
-        if(!isWindows)
+        loadWordBank();
+        phraseCache = new PhraseCache(Long.getLong(PHRASE_CACHE_PROPERTY, DEFAULT_PHRASE_CACHE_BYTES));
+        phraseRegistry = new PhraseRegistry(wordBank, phraseCache);
+        playbackEngine = new PlaybackEngine(createSink(), Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE), statistics);
+        if(wordBank.getFormat() != null)
         {
-            int index = INITIAL_INDEX;
-            for(int i = 0; i < mixInfos.length; i++)
+            try
             {
-                if(mixInfos[i].getDescription().equals(MIXER_RASPI_INFO))
-                {
-                    index = i;
-                    break;
-                }
+                playbackEngine.open(wordBank.getFormat());
             }
-            mixer = AudioSystem.getMixer(mixInfos[index]);
-            DataLine.Info dataInfo = new DataLine.Info(Clip.class, null);
-            try
+            catch(LineUnavailableException e)
             {
-                clip = (Clip) mixer.getLine(dataInfo);
+                e.printStackTrace();
             }
-            catch(LineUnavailableException lue)
+        }
+        playbackWorker = new Thread(PLAYBACK_WORKER_NAME)
+        {
+            @Override
+            public void run()
             {
-                lue.printStackTrace();
+                runPlaybackWorker();
             }
+        };
+        playbackWorker.setDaemon(true);
+        playbackWorker.start();
+        startStatisticsDump(Integer.getInteger(STATISTICS_INTERVAL_PROPERTY, 0));
+    }
+    
+    /**
+     * Creates the sink the speech is played into, configured with the property glados.sound.sink
+     * "line" plays on the sound card, "null" and "null-fast" discard the audio in real time or as fast as possible,
+     * "wav:[file]" and "wav-fast:[file]" record exactly what would have been played into a WAV file
+     * @author Philipp Schulz
+     * @return Sink of the playback engine
+     */
+    private AudioSink createSink()
+    {
+        String sink = System.getProperty(SINK_PROPERTY, SINK_LINE);
+        AudioSink result;
+        if(sink.equals(SINK_NULL))
+        {
+            result = new NullSink(true);
+        }
+        else if(sink.equals(SINK_NULL_FAST))
+        {
+            result = new NullSink(false);
+        }
+        else if(sink.startsWith(SINK_WAV))
+        {
+            result = new WavFileSink(new File(sink.substring(SINK_WAV.length())), true);
+        }
+        else if(sink.startsWith(SINK_WAV_FAST))
+        {
+            result = new WavFileSink(new File(sink.substring(SINK_WAV_FAST.length())), false);
         }
         else
         {
-            try
+            if(!sink.equals(SINK_LINE))
+            {
+                System.out.println(ERROR_SINK + sink);
+            }
+            mixer = selectMixer();
+            return new LineSink(mixer);
+        }
+        // the recording is only complete once the sink is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        return result;
+    }
+    
+    /**
+     * Selects the mixer of the output line, either by its index or by a pattern matched against its name and description
+     * Without configuration the USB sound card is searched on the Raspberry Pi and the default mixer is used on Windows
+     * @author Philipp Schulz
+     * @return Selected mixer, null for the default mixer of the system
+     */
+    private Mixer selectMixer()
+    {
+        Mixer.Info[] mixInfos = AudioSystem.getMixerInfo();
+        Integer configuredIndex = Integer.getInteger(MIXER_INDEX_PROPERTY);
+        String configuredPattern = System.getProperty(MIXER_PROPERTY);
+        if(configuredIndex == null && configuredPattern == null && isWindows)
+        {
+            System.out.println(DEFAULT_MIXER_OUTPUT);
+            return null;
+        }
+        int index = INITIAL_INDEX;
+        if(configuredIndex != null && configuredIndex >= 0 && configuredIndex < mixInfos.length)
+        {
+            index = configuredIndex;
+        }
+        else
+        {
+            Pattern pattern = configuredPattern != null ? Pattern.compile(configuredPattern) : Pattern.compile(Pattern.quote(MIXER_RASPI_INFO));
+            int match = findMixer(mixInfos, pattern);
+            if(match >= 0)
             {
-                clip = AudioSystem.getClip();
+                index = match;
             }
-            catch(LineUnavailableException ex)
+            else
             {
-                ex.printStackTrace();
+                System.out.printf(ERROR_NO_MIXER, pattern, index);
             }
         }
+        if(index >= mixInfos.length)
+        {
+            System.out.println(DEFAULT_MIXER_OUTPUT);
+            return null;
+        }
+        System.out.printf(MIXER_OUTPUT, index, mixInfos[index].getName(), mixInfos[index].getDescription());
+        return AudioSystem.getMixer(mixInfos[index]);
     }
     
     /**
-     * Call this method to turn a given String into audial response of the program
+     * Searches the first mixer with output lines whose name or description matches the given pattern
      * @author Philipp Schulz
-     * @param msg String that should be given out as audio of this program
+     * @param mixInfos Infos of all mixers of the system
+     * @param pattern Pattern that is searched in the name and description
+     * @return Index of the mixer, -1 if no mixer matches
+     */
+    private int findMixer(Mixer.Info[] mixInfos, Pattern pattern)
+    {
+        Line.Info outputLine = new Line.Info(SourceDataLine.class);
+        for(int i = 0; i < mixInfos.length; i++)
+        {
+            if((pattern.matcher(mixInfos[i].getName()).find() || pattern.matcher(mixInfos[i].getDescription()).find())
+                    && AudioSystem.getMixer(mixInfos[i]).isLineSupported(outputLine))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Starts a thread that prints the playback statistics at a fixed interval
+     * @author Philipp Schulz
+     * @param interval Interval in seconds, no thread is started for 0 or less
      */
-    public void playSound(String msg)
+    private void startStatisticsDump(int interval)
     {
-        hasFinished = false;
-        homeDir = new File(System.getProperty(USER_DIR));
-        refeshWordBuffer();
-        snipMessage(msg);
-        Thread thread = new Thread()
+        if(interval <= 0)
+        {
+            return;
+        }
+        Thread thread = new Thread(STATISTICS_NAME)
         {
             @Override
             public void run()
             {
-                System.out.println(GLADOS_OUTPUT + msg);
-                for(int i = 0; i < messages.size(); i++)
-                {
-                    String fileName = EMPTY_STRING;
-                    if(isWindows)
-                    {
-                        fileName = homeDir.getAbsolutePath() + SLASH;
-                    }
-                    String wordName = messages.get(i);
-                    if(wordName.equals(DOT))
-                    {
-                        wordName = POINT;
-                    }
-                    fileName += FILE_PATH + wordName + AUDIO_FORMAT;
-                    try
-                    {
-                        if(!isWindows)
-                        {
-                            fileName = PI_DIR+fileName;
-                        }
-                        createFile(fileName);
-                        clips.add(audioIn);
-                    }
-                    catch(Exception e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
-                for(AudioInputStream currentClip : clips)
+                while(true)
                 {
                     try
                     {
-                        clip.open(currentClip);
-                        clip.start();
-                        waitForEnd();
-                        clip.close();
+                        Thread.sleep((long) interval * MILLIS_PER_SECOND);
                     }
-                    catch(Exception e)
+                    catch(InterruptedException e)
                     {
-                        e.printStackTrace();
+                        return;
                     }
+                    dumpStatistics();
                 }
-                hasFinished = true;
             }
         };
+        thread.setDaemon(true);
         thread.start();
     }
     
     /**
-     * Used in the AudioSystem when a specific audio file should be played
+     * Call this method to turn a given String into audial response of the program
+     * @author Philipp Schulz
+     * @param msg String that should be given out as audio of this program
+     * @return Future that completes when the message has been played, blocking actions should be chained with thenRunAsync
+     */
+    public CompletableFuture<Void> playSound(String msg)
+    {
+        return playSound(msg, PlaybackJob.PRIORITY_NORMAL).getCompletion();
+    }
+    
+    /**
+     * Queues a given String for the audial response of the program, messages with a higher priority are played first
+     * @author Philipp Schulz
+     * @param msg String that should be given out as audio of this program
+     * @param priority Priority of the message, one of the priorities of the PlaybackJob class
+     * @return Job of the message, can be used to cancel it
+     */
+    public PlaybackJob playSound(String msg, int priority)
+    {
+        PlaybackJob job = new PlaybackJob(msg, priority);
+        pendingJobs.incrementAndGet();
+        playbackQueue.add(job);
+        return job;
+    }
+    
+    /**
+     * Cancels the utterance that is currently played and all queued ones, e.g. when a new wake word arrives
      * @author Philipp Schulz
-     * @param fileName Name of the file that should be played
      */
-    private void createFile(String fileName)
+    public void stopSound()
     {
-        if(homeDir.getAbsolutePath().equals(PI_DIR))
+        for(PlaybackJob job : playbackQueue)
         {
-            try
+            job.cancel();
+        }
+        PlaybackJob job = currentJob;
+        if(job != null)
+        {
+            job.cancel();
+            MixStream stream = job.getStream();
+            if(stream != null)
             {
-                file = new File(homeDir, fileName);
-                url = file.toURI().toURL();
-                audioIn = AudioSystem.getAudioInputStream(url);
+                playbackEngine.cancel(stream);
             }
-            catch(Exception e)
+        }
+    }
+    
+    /**
+     * Plays the remaining audio and closes the output, afterwards nothing can be played
+     * @author Philipp Schulz
+     */
+    public void close()
+    {
+        playbackEngine.close();
+    }
+    
+    /**
+     * Loads a sound effect and converts it into the format of the output line
+     * @author Philipp Schulz
+     * @param file Audio file of the effect
+     * @return Clip of the effect or null if it could not be loaded
+     */
+    public WordClip loadEffect(File file)
+    {
+        try(AudioInputStream audioIn = AudioSystem.getAudioInputStream(file))
+        {
+            ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+            byte[] buffer = new byte[EFFECT_BUFFER_SIZE];
+            int count;
+            while((count = audioIn.read(buffer)) > 0)
             {
-                e.printStackTrace();
+                pcm.write(buffer, 0, count);
             }
+            WordClip effect = new WordClip(file.getName(), audioIn.getFormat(), pcm.toByteArray());
+            AudioFormat format = playbackEngine.getFormat();
+            return format != null ? WordNormalizer.normalize(effect, format) : effect;
         }
-        else
+        catch(IOException | UnsupportedAudioFileException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Plays a sound effect on top of the speech, the effect is mixed into the output line and does not wait for the speech
+     * @author Philipp Schulz
+     * @param effect Clip of the effect in the format of the output line, see loadEffect
+     * @param gain Gain of the effect, 1 keeps its volume unchanged
+     * @return Stream of the effect, can be used to change its gain or to cancel it, null if it could not be played
+     */
+    public MixStream playEffect(WordClip effect, float gain)
+    {
+        MixStream stream = new MixStream(Collections.singletonList(effect), gain);
+        try
+        {
+            playbackEngine.addStream(stream);
+            return stream;
+        }
+        catch(LineUnavailableException | RuntimeException e)
+        {
+            System.out.println(ERROR_EFFECT + effect.getWord() + SPACER + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Main loop of the playback worker, takes one job after another from the queue and plays it
+     * @author Philipp Schulz
+     */
+    private void runPlaybackWorker()
+    {
+        while(true)
         {
+            PlaybackJob job;
             try
             {
-                file = new File(fileName);
-                url = file.toURI().toURL();
-                audioIn = AudioSystem.getAudioInputStream(url);
+                job = playbackQueue.take();
+            }
+            catch(InterruptedException e)
+            {
+                return;
+            }
+            currentJob = job;
+            statistics.getQueueWait().record(System.nanoTime() - job.getCreatedTime());
+            try
+            {
+                if(!job.isCancelled())
+                {
+                    System.out.println(GLADOS_OUTPUT + job.getMessage());
+                    job.setWords(preparePhrase(job.getMessage()));
+                    playbackEngine.play(job);
+                }
+                job.getCompletion().complete(null);
             }
             catch(Exception e)
             {
                 e.printStackTrace();
+                job.getCompletion().completeExceptionally(e);
+            }
+            currentJob = null;
+            synchronized(idleLock)
+            {
+                if(pendingJobs.decrementAndGet() == 0)
+                {
+                    idleLock.notifyAll();
+                }
             }
         }
     }
     
     /**
-     * Used to check if a sound clip has finished playing
+     * Looks up the rendered phrase of a message in the phrase cache or assembles and caches it
+     * Registered phrases are taken precompiled from the phrase registry without parsing the message
      * @author Philipp Schulz
-     * @return Whether the sound has finished playing
+     * @param msg Message that should be prepared
+     * @return Clips that should be played for the message
      */
-    public synchronized boolean hasFinished()
+    private List<WordClip> preparePhrase(String msg)
     {
-        return hasFinished;
+        Phrase registered = phraseRegistry.get(msg);
+        String key = registered != null ? registered.getKey() : phraseCache.normalize(msg);
+        WordClip phrase = phraseCache.get(key);
+        if(phrase != null)
+        {
+            return Collections.singletonList(phrase);
+        }
+        WordSequence sequence;
+        if(registered != null)
+        {
+            sequence = registered.getWords();
+        }
+        else
+        {
+            phraseSequence.clear();
+            phraseTokenizer.tokenize(msg, phraseSequence, word -> System.out.println(ERROR_MISSING_WORD + word));
+            sequence = phraseSequence;
+        }
+        List<WordClip> words = resolveWords(sequence);
+        WordClip rendered = phraseCache.put(key, words);
+        if(rendered != null)
+        {
+            return Collections.singletonList(rendered);
+        }
+        return words;
     }
     
     /**
-     * Method to empty the ArrayList that contains all words from the given String
+     * Looks up the clips of all word IDs in the word bank
      * @author Philipp Schulz
+     * @param sequence IDs of the words
+     * @return Clips of the words in the same order
      */
-    private void refeshWordBuffer()
+    private List<WordClip> resolveWords(WordSequence sequence)
     {
-        messages = new ArrayList<String>();
+        ArrayList<WordClip> words = new ArrayList<>(sequence.size() * 2);
+        for(int i = 0; i < sequence.size(); i++)
+        {
+            if(wordGap != null && i > 0)
+            {
+                words.add(wordGap);
+            }
+            words.add(wordBank.getWord(sequence.get(i)));
+        }
+        return words;
     }
     
     /**
-     * Call this method to block for the time that a sound is still played
+     * Compiles the given response phrases into word IDs, should be called once at startup
+     * Every word that is missing in the word bank is logged, so that missing clips are noticed before the first response
      * @author Philipp Schulz
+     * @param phrases Texts of the phrases exactly as they are passed to playSound
+     * @return Total number of missing words, 0 if every phrase can be spoken completely
      */
-    public void waitForSoundBeingFinished()
+    public int registerPhrases(String... phrases)
+    {
+        return phraseRegistry.register(phrases);
+    }
+    
+    /**
+     * Decodes all word clips once so that no file has to be opened while GLaDOS is speaking
+     * -Dglados.sound.silenceThreshold and -Dglados.sound.silenceMargin trim the silence of the clips, -Dglados.sound.wordGap puts
+     * a fixed gap in ms between the words, both are off by default so that the phrases sound like before
+     * @author Philipp Schulz
+     */
+    private void loadWordBank()
     {
-        while(!hasFinished())
+        File directory;
+        if(isWindows)
         {
-            try
-            {
-                Thread.sleep(WAITING_TIME_SOUND);
-            }
-            catch(Exception e)
+            directory = new File(System.getProperty(USER_DIR), FILE_PATH);
+        }
+        else
+        {
+            directory = new File(PI_DIR + FILE_PATH);
+        }
+        wordBank = new WordBank(directory);
+        if(wordBank.getFormat() == null)
+        {
+            // all streams are mixed into one line, so the clips have to share one format
+            System.out.println(ERROR_NOT_NORMALIZED);
+            wordBank.normalize();
+        }
+        float threshold = Float.parseFloat(System.getProperty(SILENCE_THRESHOLD_PROPERTY, DEFAULT_SILENCE_THRESHOLD));
+        if(threshold > 0)
+        {
+            wordBank.trimSilence(threshold, Integer.getInteger(SILENCE_MARGIN_PROPERTY, DEFAULT_SILENCE_MARGIN));
+        }
+        if(Boolean.getBoolean(COMPRESS_WORDS_PROPERTY))
+        {
+            wordBank.compress();
+        }
+        AudioFormat format = wordBank.getFormat();
+        int gap = Integer.getInteger(WORD_GAP_PROPERTY, DEFAULT_WORD_GAP);
+        if(gap > 0 && format != null)
+        {
+            int frames = (int) (format.getFrameRate() * gap / MILLIS_PER_SECOND);
+            byte[] silence = new byte[frames * format.getFrameSize()];
+            if(format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
             {
-                e.printStackTrace();
+                Arrays.fill(silence, (byte) UNSIGNED_SILENCE);
             }
+            wordGap = new WordClip(WORD_GAP_NAME, format, silence);
         }
+        phraseTokenizer = new PhraseTokenizer(wordBank);
     }
     
     /**
-     * Splits the given String into every Substring, e.g. words
+     * Returns how often the output buffer ran empty while a phrase was played, used to tune the buffer size
      * @author Philipp Schulz
-     * @param msg String that should be split into all the substrings
+     * @return Number of buffer underruns since startup
      */
-    private void snipMessage(String msg)
+    public long getBufferUnderruns()
     {
-        try
+        return playbackEngine.getUnderruns();
+    }
+    
+    /**
+     * Returns the latency histograms of the speech output
+     * @author Philipp Schulz
+     * @return Statistics of all utterances since startup or the last reset
+     */
+    public PlaybackStatistics getStatistics()
+    {
+        return statistics;
+    }
+    
+    /**
+     * Prints the latency histograms, the phrase cache counters and the buffer underruns
+     * @author Philipp Schulz
+     */
+    public void dumpStatistics()
+    {
+        System.out.println(statistics);
+        System.out.println(phraseCache);
+        System.out.println(UNDERRUN_OUTPUT + playbackEngine.getUnderruns());
+    }
+    
+    /**
+     * Returns the cache of rendered phrases, e.g. for printing its hit and miss counters
+     * @author Philipp Schulz
+     * @return Cache of rendered phrases
+     */
+    public PhraseCache getPhraseCache()
+    {
+        return phraseCache;
+    }
+    
+    /**
+     * Used to check if a sound clip has finished playing
+     * @author Philipp Schulz
+     * @return Whether the sound has finished playing
+     */
+    public boolean hasFinished()
+    {
+        return pendingJobs.get() == 0;
+    }
+    
+    /**
+     * Call this method to block for the time that a sound is still played
+     * @author Philipp Schulz
+     */
+    public void waitForSoundBeingFinished()
+    {
+        synchronized(idleLock)
         {
-            int firstIndex = msg.indexOf(SPACING);
-            if(firstIndex > 0)
+            while(!hasFinished())
             {
-                String restOfMsg = msg.substring((firstIndex + 1), msg.length());
-                String firstWord = msg.substring(0, firstIndex);
-                firstWord = firstWord.replaceAll(SPACING,EMPTY_STRING);
                 try
                 {
-                   double doubleValue = Double.parseDouble(firstWord);
-                   if((doubleValue*10)%10 == 0)
-                   {
-                        firstWord = numberToString(Integer.parseInt(firstWord)).trim();
-                        messages.add(firstWord);
-                   }
-                   else
-                   {
-                        firstWord = numberToString(doubleValue).trim();
-                        snipMessage(firstWord);
-                   }
-                   
+                    idleLock.wait();
                 }
-                catch(Exception e)
+                catch(InterruptedException e)
                 {
-                    messages.add(firstWord);
-                }
-                snipMessage(restOfMsg);
-            }
-            else
-            {
-                try
-                {
-                   double doubleValue = Double.parseDouble(msg);
-                   if((doubleValue*10)%10 == 0)
-                   {
-                        msg = numberToString(Integer.parseInt(msg)).trim();
-                        messages.add(msg);
-                   }
-                   else
-                   {
-                        msg = numberToString(doubleValue).trim();
-                        snipMessage(msg);
-                   }
-                   
-                }
-                catch(Exception e)
-                {
-                    messages.add(msg);
+                    e.printStackTrace();
+                    Thread.currentThread().interrupt();
+                    return;
                 }
             }
         }
-        catch(Exception e)
-        {
-            
-        }
     }
     
     /**
@@ -336,18 +628,6 @@ public class Sound
         }
     }
     
-    /**
-     * When this method is called, the program will wait until the currently active audio file has finished playing
-     * @author Philipp Schulz
-     */
-    private void waitForEnd()
-    {
-        do
-        {
-            waitASec();
-        }while(clip.isActive());
-    }
-    
     /**
      * Converts a number into its single digits, supports numbers up to 999 billion
      * @author Philipp Schulz
@@ -356,20 +636,9 @@ public class Sound
      */
     public String numberToSingleDigits(String number)
     {
-        String newNumber = EMPTY_STRING;
-        for(int i = 0; i < number.length(); i++)
-        {
-            String singleDigit = number.substring(i, i+1);
-            if(!singleDigit.equals(DOT))
-            {
-                newNumber += SINGLE_DIGITS[Integer.parseInt(singleDigit)]+SPACER;
-            }
-            else
-            {
-                newNumber += DOT_WORD + SPACER;
-            }
-        }
-        return newNumber;        
+        StringBuilder builder = new StringBuilder();
+        NumberWords.appendSingleDigits(number, word -> builder.append(word).append(SPACER));
+        return builder.toString();
     }
     
     /**
@@ -380,7 +649,9 @@ public class Sound
      */
     public String numberToString(int number)
     {
-        return numberToString(number+EMPTY_STRING);
+        StringBuilder builder = new StringBuilder();
+        NumberWords.appendNumber(number, word -> builder.append(word).append(SPACER));
+        return builder.toString();
     }
     
     /**
@@ -391,7 +662,9 @@ public class Sound
      */
     public String numberToString(double number)
     {
-        return numberToString(number+EMPTY_STRING);
+        StringBuilder builder = new StringBuilder();
+        NumberWords.appendNumber(number, word -> builder.append(word).append(SPACER));
+        return builder.toString();
     }
     
     /**
@@ -402,162 +675,12 @@ public class Sound
      */
     public String numberToString(String number)
     {
-        String finishedNumber = EMPTY_STRING;
-        double numberDouble = Double.parseDouble(number);
-        long numberLong = (long)numberDouble;
-        if(numberDouble==ZERO_INT)
-        {
-            finishedNumber = SINGLE_DIGITS[ZERO_INT]+SPACER;
-        }
-        else
-        {
-            if(numberLong==ZERO_INT)
-            {
-                finishedNumber = SINGLE_DIGITS[ZERO_INT]+SPACER;
-            }
-            if(isNegative(numberLong))
-            {
-                finishedNumber += MINUS + SPACER;
-                numberDouble *=MINUS1;
-                numberLong *=MINUS1;
-
-            }
-            String allDigits = numberLong + EMPTY_STRING;
-            String decimal = number.substring(allDigits.length());
-            if(decimal.length() > DECIMAL_ROUND)
-            {
-                decimal = decimal.substring(0, DECIMAL_ROUND);
-            }
-            double numberLength = allDigits.length();
-            int tripletCount = (int)numberLength/TRIPLET_OFFSET;
-            if(tripletCount < numberLength/TRIPLET_OFFSET)
-            {
-                tripletCount++;
-            }
-            ArrayList<String> triplets = new ArrayList<>();
-            String newAllNumbers = allDigits + EMPTY_STRING;
-            for(int i=0;i<tripletCount;i++)
-            {
-                triplets.add(EMPTY_STRING);
-            }
-            for(int i=0;i<tripletCount;i++)
-            {
-                String triplet;
-                if((numberLength-(i*TRIPLET_OFFSET)>TRIPLET_OFFSET))
-                {
-                    int underLimit = newAllNumbers.length()-TRIPLET_OFFSET;
-                    triplet = newAllNumbers.substring(underLimit);
-                    newAllNumbers = newAllNumbers.substring(0,underLimit);
-                }
-                else
-                {
-                    triplet = newAllNumbers;
-                }
-                triplets.set(tripletCount-i+MINUS1, triplet);
-            }
-            for(int i = 0; i<triplets.size();i++)
-            {
-                finishedNumber += convertTripletToWords(triplets.get(i),triplets.size()-i);
-            }
-            if(!decimal.equals(ZERO))
-            {
-                String decimalRest = numberToSingleDigits(removeLastZeros(decimal));
-                finishedNumber += decimalRest;
-            }
-        }
-        return finishedNumber;
-    }
-    
-    /**
-    * Converts a given triplet of a number into the English words and adds the weight at the end
-    * @author Philipp Schulz
-    * @param triplet Number that should be converted into the English language
-    * @param weight Weight of the number
-    * @return Original number converted into English words
-    */ 
-   private String convertTripletToWords(String triplet, int weight)
-   {
-       String finishedTriplet = EMPTY_STRING;
-       String t1,t2,t3,t23;
-       switch(triplet.length())
-       {
-            case T0:
-                t1 = ZERO;
-                t2 = ZERO;
-                t3 = ZERO;
-            case T1:
-                t1 = ZERO;
-                t2 = ZERO;
-                t3 = triplet;
-                break;
-            case T2:
-                t1 = ZERO;
-                t2 = triplet.substring(0,T1);
-                t3 = triplet.substring(T1);
-                break;
-            default:
-                t1 = triplet.substring(0,T1);
-                t2 = triplet.substring(T1,T2);
-                t3 = triplet.substring(T2);
-                break;
-        }
-       t23 = t2+t3;
-       String t123=t1+t23;
-       if(!t123.equals(TRIPLET_ZERO))
-       {
-           if(Integer.parseInt(t1)!=0)
-           {
-               finishedTriplet = SINGLE_DIGITS[Integer.parseInt(t1)]+SPACER+HUNDRED+SPACER;
-           }
-           if(Integer.parseInt(t23)<TWENTY)
-           {
-               finishedTriplet += UNDER_TWENTY[Integer.parseInt(t23)]+SPACER;
-           }
-           else
-           {
-               if(!t2.equals(ZERO))
-               {
-                   finishedTriplet += TEENS_DIGITS[Integer.parseInt(t2)]+SPACER;
-               }
-               if(!t3.equals(ZERO))
-               {
-                   finishedTriplet += UNDER_TWENTY[Integer.parseInt(t3)]+SPACER;
-               }
-           }
-           if(weight>T1)
-           {
-               finishedTriplet+=TEN_STEPS[weight]+SPACER;
-           }
-       }
-       return finishedTriplet;
-   }
-    
-   /**
-     * Method to recursively remove the last zeros in the given String
-     * @author Philipp Schulz
-     * @param number Number from which the last zeros should be removed from
-     * @return String that contains the original number without zeros at the end
-     */
-    private String removeLastZeros(String number)
-    {
-        String rest = number;
-        if(number.endsWith(ZERO))
+        StringBuilder builder = new StringBuilder();
+        if(!NumberWords.appendNumber(number, word -> builder.append(word).append(SPACER)))
         {
-            rest = number.substring(0, number.length()-1);
-            rest = removeLastZeros(rest);
+            throw new NumberFormatException(number);
         }
-        return rest;
-    }
-    
-    /**
-     * Checks whether a given Integer is negative
-     * @author Philipp Schulz
-     * @param number Number that should be checked whether it is negative
-     * @return True or false whether the given number is negative
-     */
-    private boolean isNegative(long number)
-    {
-        return number < 0;
+        return builder.toString();
     }
     
     /**
@@ -0,0 +1,136 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Audio sink that records exactly the data that would have been played into a WAV file, in real time or as fast as possible
+ * The data is collected in a raw file next to the WAV file, which is written when the sink is closed
+ * @author Philipp Schulz
+ */
+public class WavFileSink extends NullSink
+{
+    private final File file;
+    private final File rawFile;
+    private OutputStream raw;
+    private long recordedBytes;
+
+    private final String RAW_EXTENSION = ".pcm";
+    private final String NAME = "WAV file ";
+    private final String RECORD_OUTPUT = "Sound: recorded %d bytes into %s%n";
+
+    /**
+     * Creates a sink that records into the given file
+     * @author Philipp Schulz
+     * @param file WAV file that is written when the sink is closed
+     * @param realTime Whether the data is consumed at the speed of the audio instead of as fast as possible
+     */
+    public WavFileSink(File file, boolean realTime)
+    {
+        super(realTime);
+        this.file = file;
+        this.rawFile = new File(file.getPath() + RAW_EXTENSION);
+    }
+
+    /**
+     * Opens the sink and creates the raw file
+     * @author Philipp Schulz
+     * @param format Format of the PCM data that is written
+     * @param bufferSize Size of the buffer in bytes
+     */
+    @Override
+    public synchronized void open(AudioFormat format, int bufferSize)
+    {
+        super.open(format, bufferSize);
+        try
+        {
+            raw = new BufferedOutputStream(new FileOutputStream(rawFile));
+            recordedBytes = 0;
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the played data to the raw file
+     * @author Philipp Schulz
+     * @param data Array containing the played data
+     * @param offset Offset of the data inside of the array
+     * @param length Number of bytes
+     */
+    @Override
+    protected void play(byte[] data, int offset, int length)
+    {
+        super.play(data, offset, length);
+        if(raw == null || length == 0)
+        {
+            return;
+        }
+        try
+        {
+            raw.write(data, offset, length);
+            recordedBytes += length;
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the sink and converts the raw file into the WAV file
+     * @author Philipp Schulz
+     */
+    @Override
+    public synchronized void close()
+    {
+        super.close();
+        if(raw == null)
+        {
+            return;
+        }
+        AudioFormat format = getFormat();
+        try
+        {
+            raw.close();
+            raw = null;
+            try(AudioInputStream audioIn = new AudioInputStream(new BufferedInputStream(new FileInputStream(rawFile)), format, recordedBytes / format.getFrameSize()))
+            {
+                AudioSystem.write(audioIn, AudioFileFormat.Type.WAVE, file);
+            }
+            rawFile.delete();
+            System.out.printf(RECORD_OUTPUT, recordedBytes, file);
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME + file;
+    }
+
+    /**
+     * Returns the number of bytes recorded into the file
+     * @author Philipp Schulz
+     * @return Recorded bytes since the sink was opened
+     */
+    public synchronized long getRecordedBytes()
+    {
+        return recordedBytes;
+    }
+}
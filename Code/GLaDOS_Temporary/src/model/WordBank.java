@@ -0,0 +1,497 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Holds the decoded audio of every word GLaDOS can say, loaded once at startup
+ * @author Philipp Schulz
+ */
+public class WordBank
+{
+    public static final int MISSING_ID = -1;
+
+    private final Map<String, WordClip> words;
+    private String[] names;
+    private WordClip[] clips;
+    private int[] index;
+    private int indexMask;
+    private long residentBytes;
+    private long mappedBytes;
+    private long loadTime;
+
+    private final String AUDIO_FORMAT = ".wav";
+    private final int READ_BUFFER_SIZE = 4096;
+    private final String PACKED_EXTENSION = ".bank";
+    private final String LOAD_OUTPUT = "Sound: loaded %d words from %s in %d ms, %d bytes resident, %d bytes mapped%n";
+    private final String TRIM_OUTPUT = "Sound: trimmed silence of %d words, %.0f ms saved in total%n";
+    private final String COMPRESS_OUTPUT = "Sound: compressed %d words from %d to %d bytes, %d bytes saved, decoding costs %.2f ms per second of audio%n";
+    private final String NORMALIZE_OUTPUT = "Sound: converted %d words to %s%n";
+    private final String ERROR_DIRECTORY = "Sound: word directory not found: ";
+    private final int HASH_FACTOR = 31;
+    private final int INDEX_LOAD = 4;
+
+    /**
+     * Loads every word clip of the given directory, a packed word bank next to the directory is preferred
+     * @author Philipp Schulz
+     * @param directory Directory that contains the word clips
+     */
+    public WordBank(File directory)
+    {
+        this(directory, true);
+    }
+
+    /**
+     * Loads every word clip of the given directory
+     * @author Philipp Schulz
+     * @param directory Directory that contains the word clips
+     * @param usePackedFile Whether the packed word bank "[directory].bank" should be memory mapped if it exists
+     */
+    public WordBank(File directory, boolean usePackedFile)
+    {
+        words = new HashMap<>();
+        long beginTime = System.nanoTime();
+        File packedFile = new File(directory.getParentFile(), directory.getName() + PACKED_EXTENSION);
+        File source = directory;
+        if(!usePackedFile || !packedFile.isFile() || !loadPacked(packedFile))
+        {
+            load(directory);
+        }
+        else
+        {
+            source = packedFile;
+        }
+        buildIndex();
+        loadTime = (System.nanoTime() - beginTime) / 1_000_000;
+        System.out.printf(LOAD_OUTPUT, words.size(), source, loadTime, residentBytes, mappedBytes);
+    }
+
+    /**
+     * Memory maps the packed word bank, the PCM data stays in the page cache instead of the heap
+     * @author Philipp Schulz
+     * @param packedFile Packed word bank file
+     * @return False if the file could not be mapped
+     */
+    private boolean loadPacked(File packedFile)
+    {
+        try
+        {
+            words.putAll(PackedWordBank.map(packedFile));
+            for(WordClip clip : words.values())
+            {
+                mappedBytes += clip.getLength();
+            }
+            return true;
+        }
+        catch(IOException e)
+        {
+            e.printStackTrace();
+            words.clear();
+            mappedBytes = 0;
+            return false;
+        }
+    }
+
+    /**
+     * Decodes all clips of the directory into PCM buffers
+     * @author Philipp Schulz
+     * @param directory Directory that contains the word clips
+     */
+    private void load(File directory)
+    {
+        File[] files = directory.listFiles();
+        if(files == null)
+        {
+            System.out.println(ERROR_DIRECTORY + directory.getAbsolutePath());
+            return;
+        }
+        for(File file : files)
+        {
+            String fileName = file.getName();
+            if(!fileName.endsWith(AUDIO_FORMAT))
+            {
+                continue;
+            }
+            String word = fileName.substring(0, fileName.length() - AUDIO_FORMAT.length());
+            try
+            {
+                WordClip clip = decode(word, file);
+                words.put(word, clip);
+                residentBytes += clip.getLength();
+            }
+            catch(IOException | UnsupportedAudioFileException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Assigns an ID to every word and builds an open addressing table that finds IDs without creating Strings
+     * @author Philipp Schulz
+     */
+    private void buildIndex()
+    {
+        names = words.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        clips = new WordClip[names.length];
+        int size = Integer.highestOneBit(Math.max(1, names.length * INDEX_LOAD - 1)) << 1;
+        index = new int[size];
+        indexMask = size - 1;
+        for(int id = 0; id < names.length; id++)
+        {
+            clips[id] = words.get(names[id]);
+            int slot = hash(names[id], 0, names[id].length()) & indexMask;
+            while(index[slot] != 0)
+            {
+                slot = (slot + 1) & indexMask;
+            }
+            index[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Calculates the hash of a part of a text, based on the String.hashCode() of that part
+     * @author Philipp Schulz
+     * @param text Text containing the word
+     * @param begin Index of the first character of the word
+     * @param end Index after the last character of the word
+     * @return Hash of the word
+     */
+    private int hash(CharSequence text, int begin, int end)
+    {
+        int hash = 0;
+        for(int i = begin; i < end; i++)
+        {
+            hash = HASH_FACTOR * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Reads the whole PCM data of a single audio file
+     * @author Philipp Schulz
+     * @param word Word that is spoken in the file
+     * @param file Audio file that should be decoded
+     * @return Decoded clip of the word
+     */
+    private WordClip decode(String word, File file) throws IOException, UnsupportedAudioFileException
+    {
+        try(AudioInputStream audioIn = AudioSystem.getAudioInputStream(file))
+        {
+            ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int count;
+            while((count = audioIn.read(buffer)) > 0)
+            {
+                pcm.write(buffer, 0, count);
+            }
+            return new WordClip(word, audioIn.getFormat(), pcm.toByteArray());
+        }
+    }
+
+    /**
+     * Converts all clips into the canonical variant of the most common format of the bank, so that they can be mixed into one line
+     * Clips that can not be converted are removed from the bank
+     * @author Philipp Schulz
+     * @return Format of all clips after the conversion, null if the bank is empty
+     */
+    public AudioFormat normalize()
+    {
+        Map<String, Integer> counts = new HashMap<>();
+        AudioFormat common = null;
+        int commonCount = 0;
+        for(WordClip clip : clips)
+        {
+            AudioFormat format = clip.getFormat();
+            int count = counts.merge(format.toString(), 1, Integer::sum);
+            if(count > commonCount)
+            {
+                common = format;
+                commonCount = count;
+            }
+        }
+        if(common == null)
+        {
+            return null;
+        }
+        AudioFormat target = WordNormalizer.canonicalFormat(common.getSampleRate(), common.getSampleSizeInBits(), common.getChannels());
+        int converted = 0;
+        for(int id = 0; id < clips.length; id++)
+        {
+            WordClip clip = clips[id];
+            if(clip.getFormat().matches(target))
+            {
+                continue;
+            }
+            try
+            {
+                WordClip result = WordNormalizer.normalize(clip, target);
+                if(clip.isDirect())
+                {
+                    mappedBytes -= clip.getLength();
+                }
+                else
+                {
+                    residentBytes -= clip.getLength();
+                }
+                residentBytes += result.getLength();
+                clips[id] = result;
+                words.put(names[id], result);
+                converted++;
+            }
+            catch(IOException e)
+            {
+                e.printStackTrace();
+                words.remove(names[id]);
+            }
+        }
+        if(words.size() != clips.length)
+        {
+            buildIndex();
+        }
+        System.out.printf(NORMALIZE_OUTPUT, converted, target);
+        return target;
+    }
+
+    /**
+     * Trims the leading and trailing silence of every clip, the trimmed clips are views of the loaded PCM data
+     * @author Philipp Schulz
+     * @param threshold Amplitude between 0 and 1 that a sample has to exceed to count as sound
+     * @param margin Silence in milliseconds that is kept before and after the sound of every word
+     * @return Playing time in milliseconds that was removed from all clips together
+     */
+    public double trimSilence(float threshold, int margin)
+    {
+        double saved = 0;
+        int trimmed = 0;
+        for(int id = 0; id < clips.length; id++)
+        {
+            WordClip clip = clips[id];
+            WordClip result = SilenceTrimmer.trim(clip, threshold, margin);
+            if(result != clip)
+            {
+                saved += SilenceTrimmer.toMillis(clip.getFormat(), clip.getLength() - result.getLength());
+                trimmed++;
+                clips[id] = result;
+                words.put(names[id], result);
+            }
+        }
+        System.out.printf(TRIM_OUTPUT, trimmed, saved);
+        return saved;
+    }
+
+    /**
+     * Replaces every clip in signed 16 bit PCM with an IMA-ADPCM compressed clip that is decoded while it is played
+     * The memory saved and the measured decoding time of the whole bank are printed, so that the mode can be chosen per device
+     * @author Philipp Schulz
+     * @return Number of bytes saved
+     */
+    public long compress()
+    {
+        long before = 0;
+        long after = 0;
+        double audioMillis = 0;
+        int compressed = 0;
+        for(int id = 0; id < clips.length; id++)
+        {
+            WordClip clip = clips[id];
+            if(!CompressedWordClip.canCompress(clip))
+            {
+                continue;
+            }
+            CompressedWordClip result = CompressedWordClip.compress(clip);
+            before += clip.getLength();
+            after += result.getCompressedLength();
+            audioMillis += SilenceTrimmer.toMillis(clip.getFormat(), clip.getLength());
+            if(clip.isDirect())
+            {
+                mappedBytes -= clip.getLength();
+            }
+            else
+            {
+                residentBytes -= clip.getLength();
+            }
+            residentBytes += result.getCompressedLength();
+            clips[id] = result;
+            words.put(names[id], result);
+            compressed++;
+        }
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        long beginTime = System.nanoTime();
+        for(WordClip clip : clips)
+        {
+            if(!(clip instanceof CompressedWordClip))
+            {
+                continue;
+            }
+            int position = 0;
+            int count;
+            while((count = clip.read(position, buffer, 0, buffer.length)) > 0)
+            {
+                position += count;
+            }
+        }
+        double decodeMillis = (System.nanoTime() - beginTime) / 1_000_000.0;
+        System.out.printf(COMPRESS_OUTPUT, compressed, before, after, before - after, audioMillis > 0 ? decodeMillis * 1000 / audioMillis : 0);
+        return before - after;
+    }
+
+    /**
+     * Returns the clip of the given word
+     * @author Philipp Schulz
+     * @param word Word that should be looked up
+     * @return Clip of the word or null if the word is not part of the word bank
+     */
+    public WordClip getWord(String word)
+    {
+        return words.get(word);
+    }
+
+    /**
+     * Looks up the ID of a word that is part of a text, no String is created for the lookup
+     * @author Philipp Schulz
+     * @param text Text containing the word
+     * @param begin Index of the first character of the word
+     * @param end Index after the last character of the word
+     * @return ID of the word or MISSING_ID if the word is not part of the word bank
+     */
+    public int getId(CharSequence text, int begin, int end)
+    {
+        int slot = hash(text, begin, end) & indexMask;
+        int entry;
+        while((entry = index[slot]) != 0)
+        {
+            String name = names[entry - 1];
+            if(name.length() == end - begin && regionMatches(name, text, begin))
+            {
+                return entry - 1;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        return MISSING_ID;
+    }
+
+    /**
+     * Looks up the ID of a word
+     * @author Philipp Schulz
+     * @param word Word that should be looked up
+     * @return ID of the word or MISSING_ID if the word is not part of the word bank
+     */
+    public int getId(String word)
+    {
+        return getId(word, 0, word.length());
+    }
+
+    /**
+     * Compares a word with a part of a text
+     * @author Philipp Schulz
+     * @param name Word of the word bank
+     * @param text Text containing the part that should be compared
+     * @param begin Index of the first character of the part, the part has the length of the word
+     * @return True if the part of the text equals the word
+     */
+    private boolean regionMatches(String name, CharSequence text, int begin)
+    {
+        for(int i = 0; i < name.length(); i++)
+        {
+            if(name.charAt(i) != text.charAt(begin + i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the clip of the word with the given ID
+     * @author Philipp Schulz
+     * @param id ID of the word
+     * @return Clip of the word
+     */
+    public WordClip getWord(int id)
+    {
+        return clips[id];
+    }
+
+    /**
+     * Returns the number of words in the word bank, IDs range from 0 to this number - 1
+     * @author Philipp Schulz
+     * @return Number of words
+     */
+    public int getWordCount()
+    {
+        return names.length;
+    }
+
+    /**
+     * Returns all words of the word bank
+     * @author Philipp Schulz
+     * @return Unmodifiable map of all words and their clips
+     */
+    public Map<String, WordClip> getWords()
+    {
+        return Collections.unmodifiableMap(words);
+    }
+
+    /**
+     * Returns the format that all clips share, a normalized word bank never requires a format conversion
+     * @author Philipp Schulz
+     * @return Common format of all clips or null if the clips differ in their format
+     */
+    public AudioFormat getFormat()
+    {
+        if(clips.length == 0)
+        {
+            return null;
+        }
+        AudioFormat format = clips[0].getFormat();
+        for(WordClip clip : clips)
+        {
+            if(!clip.getFormat().matches(format))
+            {
+                return null;
+            }
+        }
+        return format;
+    }
+
+    /**
+     * Returns the number of PCM bytes held by the word bank
+     * @author Philipp Schulz
+     * @return Resident bytes of all clips
+     */
+    public long getResidentBytes()
+    {
+        return residentBytes;
+    }
+
+    /**
+     * Returns the number of PCM bytes that are memory mapped from the packed word bank
+     * @author Philipp Schulz
+     * @return Mapped bytes of all clips
+     */
+    public long getMappedBytes()
+    {
+        return mappedBytes;
+    }
+
+    /**
+     * Returns the time it took to load the word bank
+     * @author Philipp Schulz
+     * @return Load time in milliseconds
+     */
+    public long getLoadTime()
+    {
+        return loadTime;
+    }
+}
@@ -0,0 +1,200 @@
+package model;
+
+import java.nio.ByteBuffer;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Immutable PCM audio of a single word of the word bank
+ * The PCM data is either held on the heap or is a slice of the memory mapped word bank file
+ * A clip without a word is silence, like the gap between words. A rendered phrase keeps where its words start and how much
+ * silence is in front of them, so that the gaps between its words can still be measured.
+ * @author Philipp Schulz
+ */
+public class WordClip
+{
+    private final String word;
+    private final AudioFormat format;
+    private final ByteBuffer data;
+    private final ByteBuffer view;
+    private final int[] wordStarts;                                             //byte offsets of the words after the first one
+    private final int[] gapLengths;                                             //bytes of silence in front of these words
+
+    private static final int[] NO_WORDS = new int[0];
+
+    /**
+     * Creates a word clip, the given data must not be changed afterwards
+     * @author Philipp Schulz
+     * @param word Word that is spoken in this clip
+     * @param format Format of the PCM data
+     * @param data Decoded PCM data of the clip
+     */
+    public WordClip(String word, AudioFormat format, byte[] data)
+    {
+        this(word, format, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Creates a word clip from a buffer, e.g. a slice of a memory mapped file, the PCM data is not copied
+     * @author Philipp Schulz
+     * @param word Word that is spoken in this clip
+     * @param format Format of the PCM data
+     * @param data Buffer containing the PCM data of the clip between its position and limit
+     */
+    public WordClip(String word, AudioFormat format, ByteBuffer data)
+    {
+        this.word = word;
+        this.format = format;
+        this.data = data.slice().asReadOnlyBuffer();
+        this.view = this.data.duplicate();
+        this.wordStarts = NO_WORDS;
+        this.gapLengths = NO_WORDS;
+    }
+
+    /**
+     * Creates a clip of several words, e.g. a rendered phrase
+     * @author Philipp Schulz
+     * @param word Words that are spoken in this clip
+     * @param format Format of the PCM data
+     * @param data Decoded PCM data of the clip
+     * @param wordStarts Byte offsets of the words after the first one
+     * @param gapLengths Bytes of silence in front of each of these words
+     */
+    WordClip(String word, AudioFormat format, byte[] data, int[] wordStarts, int[] gapLengths)
+    {
+        this.word = word;
+        this.format = format;
+        this.data = ByteBuffer.wrap(data).asReadOnlyBuffer();
+        this.view = this.data.duplicate();
+        this.wordStarts = wordStarts;
+        this.gapLengths = gapLengths;
+    }
+
+    /**
+     * Creates a word clip whose subclass provides the PCM data itself, e.g. by decoding it while reading
+     * @author Philipp Schulz
+     * @param word Word that is spoken in this clip
+     * @param format Format of the PCM data that is read from the clip
+     */
+    protected WordClip(String word, AudioFormat format)
+    {
+        this.word = word;
+        this.format = format;
+        this.data = null;
+        this.view = null;
+        this.wordStarts = NO_WORDS;
+        this.gapLengths = NO_WORDS;
+    }
+
+    /**
+     * Returns the word that is spoken in this clip
+     * @author Philipp Schulz
+     * @return Word of this clip
+     */
+    public String getWord()
+    {
+        return word;
+    }
+
+    /**
+     * Checks whether this clip is silence instead of a word
+     * @author Philipp Schulz
+     * @return True if no word is spoken in this clip
+     */
+    public boolean isSilence()
+    {
+        return word.isEmpty();
+    }
+
+    /**
+     * Returns the number of words in this clip after the first one
+     * @author Philipp Schulz
+     * @return 0 for a single word, the number of word boundaries for a rendered phrase
+     */
+    int getWordBoundaries()
+    {
+        return wordStarts.length;
+    }
+
+    /**
+     * Returns where a word after the first one starts
+     * @author Philipp Schulz
+     * @param boundary Index of the word boundary
+     * @return Byte offset of the word
+     */
+    int getWordStart(int boundary)
+    {
+        return wordStarts[boundary];
+    }
+
+    /**
+     * Returns the silence in front of a word after the first one
+     * @author Philipp Schulz
+     * @param boundary Index of the word boundary
+     * @return Bytes of silence
+     */
+    int getGapLength(int boundary)
+    {
+        return gapLengths[boundary];
+    }
+
+    /**
+     * Returns the format of the PCM data of this clip
+     * @author Philipp Schulz
+     * @return Format of this clip
+     */
+    public AudioFormat getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Returns the length of the PCM data of this clip
+     * @author Philipp Schulz
+     * @return Length of the clip in bytes
+     */
+    public int getLength()
+    {
+        return data.capacity();
+    }
+
+    /**
+     * Checks whether the PCM data of this clip lives outside of the heap, e.g. in a memory mapped file
+     * @author Philipp Schulz
+     * @return True if the data is not held on the heap
+     */
+    public boolean isDirect()
+    {
+        return data.isDirect();
+    }
+
+    /**
+     * Returns a read-only view of the PCM data of this clip
+     * @author Philipp Schulz
+     * @return Buffer containing the whole PCM data
+     */
+    public ByteBuffer getData()
+    {
+        return data.duplicate();
+    }
+
+    /**
+     * Copies PCM data of this clip into the given array
+     * @author Philipp Schulz
+     * @param position Position in bytes inside of this clip to start reading from
+     * @param target Array the data should be copied into
+     * @param offset Offset inside of the target array
+     * @param length Maximum number of bytes that should be copied
+     * @return Number of bytes that were copied, -1 if the end of the clip has been reached
+     */
+    public synchronized int read(int position, byte[] target, int offset, int length)
+    {
+        if(position >= view.capacity())
+        {
+            return -1;
+        }
+        int count = Math.min(length, view.capacity() - position);
+        view.position(position);
+        view.get(target, offset, count);
+        return count;
+    }
+}
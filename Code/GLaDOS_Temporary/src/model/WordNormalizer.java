@@ -0,0 +1,315 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Build time tool that validates every word clip and converts it into one canonical PCM format
+ * With all clips in the format of the output line, the playback never has to convert or reopen the line
+ * @author Philipp Schulz
+ */
+public class WordNormalizer
+{
+    private static final String AUDIO_FORMAT = ".wav";
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int BITS_8 = 8;
+    private static final int BITS_16 = 16;
+    private static final int BYTE_MASK = 0xFF;
+    private static final float MAXIMUM_8 = 127f;
+    private static final float MAXIMUM_16 = 32767f;
+    private static final String USAGE = "usage: WordNormalizer <word directory> <output directory> <sample rate> <sample size in bits> <channels>";
+    private static final String NORMALIZE_OUTPUT = "Sound: normalized %d words to %s, %d converted%n";
+    private static final String ERROR_CLIP = "Sound: can not normalize %s: %s%n";
+    private static final String ERROR_FAILED = "Sound: %d clips could not be normalized%n";
+    private static final String ERROR_EMPTY = "clip is empty";
+    private static final String ERROR_DIRECTORY = "word directory not found";
+    private static final String ERROR_TARGET = "only 8 and 16 bit PCM are supported as target format";
+
+    private WordNormalizer()
+    {
+    }
+
+    /**
+     * Creates the canonical format the clips are converted into
+     * @author Philipp Schulz
+     * @param sampleRate Sample rate of the output mixer in Hz
+     * @param sampleSize Sample size in bits, 8 or 16
+     * @param channels Number of channels
+     * @return Signed little endian PCM format
+     */
+    public static AudioFormat canonicalFormat(float sampleRate, int sampleSize, int channels)
+    {
+        return new AudioFormat(sampleRate, sampleSize, channels, true, false);
+    }
+
+    /**
+     * Converts a clip into the given format by decoding it to PCM, mixing the channels and resampling linearly
+     * @author Philipp Schulz
+     * @param clip Clip that should be converted
+     * @param target Signed little endian PCM format with 8 or 16 bits per sample
+     * @return Clip in the target format, the given clip if it already matches
+     * @throws IOException When the clip can not be converted
+     */
+    public static WordClip normalize(WordClip clip, AudioFormat target) throws IOException
+    {
+        if(clip.getFormat().matches(target))
+        {
+            return clip;
+        }
+        if(target.getSampleSizeInBits() != BITS_8 && target.getSampleSizeInBits() != BITS_16)
+        {
+            throw new IOException(ERROR_TARGET);
+        }
+        float[][] samples = decode(clip);
+        samples = mixChannels(samples, target.getChannels());
+        samples = resample(samples, clip.getFormat().getSampleRate(), target.getSampleRate());
+        return new WordClip(clip.getWord(), target, encode(samples, target));
+    }
+
+    /**
+     * Decodes the PCM data of a clip into one array of samples between -1 and 1 per channel
+     * @author Philipp Schulz
+     * @param clip Clip that should be decoded
+     * @return Samples of every channel
+     * @throws IOException When the clip can not be decoded into signed PCM
+     */
+    private static float[][] decode(WordClip clip) throws IOException
+    {
+        AudioFormat format = clip.getFormat();
+        int sampleSize = format.getSampleSizeInBits();
+        if(sampleSize != BITS_8 && sampleSize != BITS_16)
+        {
+            throw new IOException(format.toString());
+        }
+        AudioFormat signed = new AudioFormat(format.getSampleRate(), sampleSize, format.getChannels(), true, false);
+        byte[] pcm = new byte[clip.getLength()];
+        clip.read(0, pcm, 0, pcm.length);
+        if(!format.matches(signed))
+        {
+            try
+            {
+                AudioInputStream source = new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / format.getFrameSize());
+                pcm = readAll(AudioSystem.getAudioInputStream(signed, source));
+            }
+            catch(IllegalArgumentException e)
+            {
+                throw new IOException(format.toString(), e);
+            }
+        }
+        int channels = format.getChannels();
+        int bytesPerSample = sampleSize / BITS_8;
+        int frames = pcm.length / (bytesPerSample * channels);
+        float[][] samples = new float[channels][frames];
+        int index = 0;
+        for(int frame = 0; frame < frames; frame++)
+        {
+            for(int channel = 0; channel < channels; channel++)
+            {
+                if(bytesPerSample == 1)
+                {
+                    samples[channel][frame] = pcm[index] / MAXIMUM_8;
+                }
+                else
+                {
+                    samples[channel][frame] = (short) ((pcm[index] & BYTE_MASK) | (pcm[index + 1] << BITS_8)) / MAXIMUM_16;
+                }
+                index += bytesPerSample;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Mixes the channels down to mono or duplicates a mono channel to the requested number of channels
+     * @author Philipp Schulz
+     * @param samples Samples of every channel
+     * @param channels Number of channels of the result
+     * @return Samples of every channel of the result
+     */
+    private static float[][] mixChannels(float[][] samples, int channels)
+    {
+        if(samples.length == channels)
+        {
+            return samples;
+        }
+        int frames = samples[0].length;
+        float[] mono = new float[frames];
+        for(float[] channel : samples)
+        {
+            for(int frame = 0; frame < frames; frame++)
+            {
+                mono[frame] += channel[frame] / samples.length;
+            }
+        }
+        float[][] result = new float[channels][];
+        for(int channel = 0; channel < channels; channel++)
+        {
+            result[channel] = channel == 0 ? mono : mono.clone();
+        }
+        return result;
+    }
+
+    /**
+     * Resamples every channel with linear interpolation
+     * @author Philipp Schulz
+     * @param samples Samples of every channel
+     * @param sourceRate Sample rate of the given samples
+     * @param targetRate Sample rate of the result
+     * @return Resampled samples of every channel
+     */
+    private static float[][] resample(float[][] samples, float sourceRate, float targetRate)
+    {
+        if(sourceRate == targetRate)
+        {
+            return samples;
+        }
+        int sourceFrames = samples[0].length;
+        int targetFrames = (int) ((long) sourceFrames * targetRate / sourceRate);
+        double step = sourceRate / targetRate;
+        float[][] result = new float[samples.length][targetFrames];
+        for(int channel = 0; channel < samples.length; channel++)
+        {
+            for(int frame = 0; frame < targetFrames; frame++)
+            {
+                double position = frame * step;
+                int index = (int) position;
+                float fraction = (float) (position - index);
+                float current = samples[channel][Math.min(index, sourceFrames - 1)];
+                float next = samples[channel][Math.min(index + 1, sourceFrames - 1)];
+                result[channel][frame] = current + (next - current) * fraction;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes samples between -1 and 1 into signed little endian PCM, samples outside of the range are clipped
+     * @author Philipp Schulz
+     * @param samples Samples of every channel
+     * @param format Format of the PCM data
+     * @return Interleaved PCM data
+     */
+    private static byte[] encode(float[][] samples, AudioFormat format)
+    {
+        int bytesPerSample = format.getSampleSizeInBits() / BITS_8;
+        int frames = samples[0].length;
+        byte[] pcm = new byte[frames * samples.length * bytesPerSample];
+        int index = 0;
+        for(int frame = 0; frame < frames; frame++)
+        {
+            for(float[] channel : samples)
+            {
+                float sample = Math.max(-1f, Math.min(1f, channel[frame]));
+                if(bytesPerSample == 1)
+                {
+                    pcm[index] = (byte) Math.round(sample * MAXIMUM_8);
+                }
+                else
+                {
+                    int value = Math.round(sample * MAXIMUM_16);
+                    pcm[index] = (byte) value;
+                    pcm[index + 1] = (byte) (value >> BITS_8);
+                }
+                index += bytesPerSample;
+            }
+        }
+        return pcm;
+    }
+
+    /**
+     * Reads a stream until its end
+     * @author Philipp Schulz
+     * @param audioIn Stream that should be read
+     * @return All bytes of the stream
+     * @throws IOException When the stream could not be read
+     */
+    private static byte[] readAll(AudioInputStream audioIn) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int count;
+        while((count = audioIn.read(buffer)) > 0)
+        {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Build time entry point, validates and normalizes all clips of a directory and writes them into the output directory
+     * Exits with an error if any clip can not be normalized, so that the build fails
+     * @author Philipp Schulz
+     * @param args Word directory, output directory, sample rate, sample size in bits and number of channels
+     */
+    public static void main(String[] args)
+    {
+        if(args.length != 5)
+        {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        File output = new File(args[1]);
+        AudioFormat target = canonicalFormat(Float.parseFloat(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        File[] files = directory.listFiles();
+        if(files == null)
+        {
+            System.out.printf(ERROR_CLIP, directory, ERROR_DIRECTORY);
+            System.exit(1);
+        }
+        Arrays.sort(files);
+        output.mkdirs();
+        List<String> failed = new ArrayList<>();
+        int converted = 0;
+        int normalized = 0;
+        for(File file : files)
+        {
+            String fileName = file.getName();
+            if(!fileName.endsWith(AUDIO_FORMAT))
+            {
+                continue;
+            }
+            try(AudioInputStream audioIn = AudioSystem.getAudioInputStream(file))
+            {
+                byte[] pcm = readAll(audioIn);
+                if(pcm.length == 0)
+                {
+                    throw new IOException(ERROR_EMPTY);
+                }
+                String word = fileName.substring(0, fileName.length() - AUDIO_FORMAT.length());
+                WordClip clip = new WordClip(word, audioIn.getFormat(), pcm);
+                WordClip result = normalize(clip, target);
+                if(result != clip)
+                {
+                    converted++;
+                }
+                byte[] data = new byte[result.getLength()];
+                result.read(0, data, 0, data.length);
+                AudioInputStream normalizedIn = new AudioInputStream(new ByteArrayInputStream(data), target, data.length / target.getFrameSize());
+                AudioSystem.write(normalizedIn, AudioFileFormat.Type.WAVE, new File(output, fileName));
+                normalized++;
+            }
+            catch(IOException | UnsupportedAudioFileException e)
+            {
+                System.out.printf(ERROR_CLIP, fileName, e.getMessage());
+                failed.add(fileName);
+            }
+        }
+        if(!failed.isEmpty())
+        {
+            System.out.printf(ERROR_FAILED, failed.size());
+            System.exit(1);
+        }
+        System.out.printf(NORMALIZE_OUTPUT, normalized, target, converted);
+    }
+}
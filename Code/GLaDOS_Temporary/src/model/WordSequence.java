@@ -0,0 +1,93 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Compact, reusable sequence of word IDs that index into the word bank
+ * @author Philipp Schulz
+ */
+public class WordSequence
+{
+    private int[] ids;
+    private int size;
+
+    private final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Creates an empty sequence
+     * @author Philipp Schulz
+     */
+    public WordSequence()
+    {
+        ids = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a sequence containing the given IDs
+     * @author Philipp Schulz
+     * @param ids IDs of the words in the order they are spoken
+     */
+    public WordSequence(int[] ids)
+    {
+        this.ids = ids.clone();
+        this.size = ids.length;
+    }
+
+    /**
+     * Appends a word ID to the end of the sequence, the capacity grows if required
+     * @author Philipp Schulz
+     * @param id ID of the word
+     */
+    public void add(int id)
+    {
+        if(size == ids.length)
+        {
+            ids = Arrays.copyOf(ids, Math.max(INITIAL_CAPACITY, ids.length * 2));
+        }
+        ids[size++] = id;
+    }
+
+    /**
+     * Returns the word ID at the given position
+     * @author Philipp Schulz
+     * @param position Position inside of the sequence
+     * @return ID of the word
+     */
+    public int get(int position)
+    {
+        if(position >= size)
+        {
+            throw new IndexOutOfBoundsException(Integer.toString(position));
+        }
+        return ids[position];
+    }
+
+    /**
+     * Returns the number of words in the sequence
+     * @author Philipp Schulz
+     * @return Number of words
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Removes all words from the sequence but keeps its capacity
+     * @author Philipp Schulz
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Copies the word IDs into a new array
+     * @author Philipp Schulz
+     * @return Array containing the IDs of the sequence
+     */
+    public int[] toArray()
+    {
+        return Arrays.copyOf(ids, size);
+    }
+}
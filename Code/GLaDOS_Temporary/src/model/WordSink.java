@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Receives the words of a message one after another, e.g. for building a String or a sequence of word IDs
+ * @author Philipp Schulz
+ */
+public interface WordSink
+{
+    /**
+     * Called for every word in the order the words should be spoken
+     * @author Philipp Schulz
+     * @param word Word that should be spoken next
+     */
+    void accept(String word);
+}